@@ -0,0 +1,132 @@
+package com.thelitblock.texteditor;
+
+import org.fxmisc.richtext.model.ReadOnlyStyledDocument;
+import org.fxmisc.richtext.model.SegmentOps;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Random;
+
+// generated text for the benchmarks to run on, Java code or a log. The same kind and size always give the same text,
+// so numbers taken before and after a change compare
+public class Corpus {
+    static final String JAVA = "java";
+    static final String LOG = "log";
+
+    private static final String[] NAMES = {"order", "customer", "invoice", "session", "request", "buffer", "token",
+            "account", "payment", "report"};
+    private static final String[] LEVELS = {"DEBUG", "INFO ", "INFO ", "INFO ", "INFO ", "WARN "};
+    private static final String[] EXCEPTIONS = {"java.io.IOException", "java.lang.IllegalStateException",
+            "java.util.concurrent.TimeoutException", "java.lang.NullPointerException"};
+
+    // text of kind JAVA or LOG, exactly size chars long
+    static String generate(String kind, int size) {
+        Random random = new Random(size);
+        StringBuilder text = new StringBuilder(size + 4096);
+        long time = 1_700_000_000_000L;
+        while (text.length() < size) {
+            switch (kind) {
+                case JAVA -> appendClass(text, random);
+                case LOG -> time = appendLogLine(text, random, time);
+                default -> throw new IllegalArgumentException("Unknown corpus " + kind);
+            }
+        }
+        text.setLength(size);
+        return text.toString();
+    }
+
+    // the document a CodeArea holds for text
+    static ReadOnlyStyledDocument<Collection<String>, String, Collection<String>> document(String text) {
+        return ReadOnlyStyledDocument.fromString(text, Collections.emptyList(), Collections.emptyList(),
+                SegmentOps.styledTextOps());
+    }
+
+    static DocumentSnapshot snapshot(String text) {
+        return new DocumentSnapshot(document(text));
+    }
+
+    // the query the search bar builds for each of its modes
+    static SearchQuery query(String mode) {
+        return switch (mode) {
+            case "plain" -> new SearchQuery("Exception", true, false, false);
+            case "ignoreCase" -> new SearchQuery("exception", false, false, false);
+            case "wholeWord" -> new SearchQuery("Exception", true, true, false);
+            case "regex" -> new SearchQuery("(\\w+)Exception", true, false, true);
+            default -> throw new IllegalArgumentException("Unknown search mode " + mode);
+        };
+    }
+
+    // a class with the comments, literals and keywords the lexer tells apart
+    private static void appendClass(StringBuilder text, Random random) {
+        String name = NAMES[random.nextInt(NAMES.length)];
+        String type = Character.toUpperCase(name.charAt(0)) + name.substring(1) + "Handler" + random.nextInt(10_000);
+        text.append("/**\n * Handles every ").append(name).append(" that comes in.\n */\n");
+        text.append("@SuppressWarnings(\"unchecked\")\n");
+        text.append("public class ").append(type).append(" extends AbstractHandler implements Runnable {\n");
+        text.append("    private static final int LIMIT = ").append(random.nextInt(1000)).append(";\n");
+        text.append("    private final Map<String, List<Integer>> ").append(name).append("s = new HashMap<>();\n\n");
+        int methods = 1 + random.nextInt(4);
+        for (int i = 0; i < methods; i++) {
+            text.append("    // sums up the ").append(name).append("s below the limit\n");
+            text.append("    public long process").append(i).append("(String input, double factor) throws IOException {\n");
+            text.append("        long total = 0L;\n");
+            text.append("        for (int i = 0; i < LIMIT; i++) {\n");
+            text.append("            char c = input.charAt(i % input.length());\n");
+            text.append("            if (c == '\\n' || c == '").append((char) ('a' + random.nextInt(26))).append("') {\n");
+            text.append("                total += Math.round(i * factor * ").append(random.nextInt(100)).append(".5e3);\n");
+            text.append("            }\n");
+            text.append("        }\n");
+            text.append("        try {\n");
+            text.append("            return total / ").append(name).append("s.size();\n");
+            text.append("        }\n");
+            text.append("        catch (ArithmeticException e) {\n");
+            text.append("            throw new IllegalStateException(\"No ").append(name).append("s for \" + input, e);\n");
+            text.append("        }\n");
+            text.append("        catch (Exception e) {\n");
+            text.append("            return -1;\n");
+            text.append("        }\n");
+            text.append("    }\n\n");
+        }
+        text.append("    /* runs once\n       per ").append(name).append(" */\n");
+        text.append("    @Override\n    public void run() {\n        System.out.println(\"").append(type)
+                .append(" done\");\n    }\n}\n\n");
+    }
+
+    // a log line, now and then an error with its stack trace. Returns the time of the line
+    private static long appendLogLine(StringBuilder text, Random random, long time) {
+        time += random.nextInt(50);
+        appendTime(text, time);
+        String name = NAMES[random.nextInt(NAMES.length)];
+        if (random.nextInt(50) == 0) {
+            String exception = EXCEPTIONS[random.nextInt(EXCEPTIONS.length)];
+            text.append(" ERROR [worker-").append(random.nextInt(16)).append("] com.example.").append(name)
+                    .append(".Service - Exception while handling ").append(name).append(' ')
+                    .append(random.nextInt(100_000)).append('\n');
+            text.append(exception).append(": failed after ").append(random.nextInt(30_000)).append(" ms\n");
+            int frames = 3 + random.nextInt(6);
+            for (int i = 0; i < frames; i++) {
+                String frame = NAMES[random.nextInt(NAMES.length)];
+                text.append("\tat com.example.").append(frame).append(".Service.handle(Service.java:")
+                        .append(1 + random.nextInt(500)).append(")\n");
+            }
+            return time;
+        }
+        text.append(' ').append(LEVELS[random.nextInt(LEVELS.length)]).append(" [worker-").append(random.nextInt(16))
+                .append("] com.example.").append(name).append(".Service - Processed ").append(name).append(' ')
+                .append(random.nextInt(100_000)).append(" in ").append(random.nextInt(500)).append(" ms\n");
+        return time;
+    }
+
+    // as in 2023-11-14 22:13:20.123, in UTC and without a calendar, every day of the log is in the same month
+    private static void appendTime(StringBuilder text, long millis) {
+        long seconds = millis / 1000;
+        text.append("2023-11-").append(pad(14 + seconds / 86_400 % 16, 2)).append(' ')
+                .append(pad(seconds / 3600 % 24, 2)).append(':').append(pad(seconds / 60 % 60, 2)).append(':')
+                .append(pad(seconds % 60, 2)).append('.').append(pad(millis % 1000, 3));
+    }
+
+    private static String pad(long value, int width) {
+        String digits = Long.toString(value);
+        return "0".repeat(Math.max(0, width - digits.length())) + digits;
+    }
+}
@@ -0,0 +1,68 @@
+package com.thelitblock.texteditor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// opening and saving a file the way the load and save tasks of the editor do, saving includes the fsync
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class FileBenchmark {
+    @Param({Corpus.JAVA, Corpus.LOG})
+    public String kind;
+    @Param({"1024", "1048576", "104857600"})
+    public int size;
+
+    private Path directory;
+    private Path file;
+    private Path saved;
+    private DocumentSnapshot snapshot;
+
+    @Setup
+    public void setup() throws IOException {
+        String text = Corpus.generate(kind, size);
+        directory = Files.createTempDirectory("texteditor-benchmark");
+        file = directory.resolve("corpus." + kind);
+        saved = directory.resolve("saved." + kind);
+        Files.writeString(file, text);
+        snapshot = Corpus.snapshot(text);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(saved);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public String load() throws IOException {
+        return FileOperations.readFile(file, (read, total) -> {
+        }).text();
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        FileOperations.writeFile(snapshot, saved, StandardCharsets.UTF_8, false, "\n", (written, total) -> {
+        });
+    }
+}
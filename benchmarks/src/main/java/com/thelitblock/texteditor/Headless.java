@@ -0,0 +1,36 @@
+package com.thelitblock.texteditor;
+
+import javafx.application.Platform;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+
+// the FX toolkit for what needs real editor controls, started on Monocle's headless platform unless -Dglass.platform
+// asks for another one
+public class Headless {
+    private static boolean started = false;
+
+    static synchronized void start() throws InterruptedException {
+        if (started) {
+            return;
+        }
+        if (System.getProperty("glass.platform") == null) {
+            System.setProperty("glass.platform", "Monocle");
+            System.setProperty("monocle.platform", "Headless");
+            System.setProperty("prism.order", "sw");
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        Platform.startup(latch::countDown);
+        latch.await();
+        Platform.setImplicitExit(false);
+        started = true;
+    }
+
+    // runs callable on the FX thread and waits for its result
+    static <T> T onFx(Callable<T> callable) throws Exception {
+        FutureTask<T> task = new FutureTask<>(callable);
+        Platform.runLater(task);
+        return task.get();
+    }
+}
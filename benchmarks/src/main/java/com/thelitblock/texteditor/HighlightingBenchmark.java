@@ -0,0 +1,58 @@
+package com.thelitblock.texteditor;
+
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+// highlighting a whole text at once, and paragraph by paragraph with the lexer state carried over as the editor does
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class HighlightingBenchmark {
+    @Param({Corpus.JAVA, Corpus.LOG})
+    public String kind;
+    @Param({"1024", "1048576", "104857600"})
+    public int size;
+
+    private String text;
+    private String[] paragraphs;
+
+    @Setup
+    public void setup() {
+        text = Corpus.generate(kind, size);
+        paragraphs = text.split("\n", -1);
+    }
+
+    @Benchmark
+    public StyleSpans<Collection<String>> computeHighlighting() {
+        return SyntaxHighlighting.computeHighlighting(text);
+    }
+
+    @Benchmark
+    public int computeParagraphHighlighting(Blackhole blackhole) {
+        int state = SyntaxHighlighting.STATE_DEFAULT;
+        for (String paragraph : paragraphs) {
+            StyleSpansBuilder<Collection<String>> spans = new StyleSpansBuilder<>();
+            state = SyntaxHighlighting.computeParagraphHighlighting(paragraph, state, spans);
+            blackhole.consume(spans.create());
+        }
+        return state;
+    }
+}
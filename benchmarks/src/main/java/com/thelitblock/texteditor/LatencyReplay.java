@@ -0,0 +1,290 @@
+package com.thelitblock.texteditor;
+
+import javafx.application.Platform;
+import javafx.event.Event;
+import javafx.event.EventType;
+import javafx.scene.Scene;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.stage.Stage;
+import org.fxmisc.richtext.CodeArea;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// replays typing, paste and replace traces against a large document in editor tabs as the editor opens them, and
+// times every input from the key event until the editor is done with it, headless by default. The results go to
+// stdout and, as JSON, to the report file, and a run that goes over one of the p99 budgets exits with 1, so a CI job
+// can fail on a regression
+public class LatencyReplay {
+    private static final String KIND = System.getProperty("texteditor.replay.kind", Corpus.JAVA);
+    private static final int SIZE = Integer.getInteger("texteditor.replay.size", 5_000_000);
+    // replays against this file instead of a generated document
+    private static final String FILE = System.getProperty("texteditor.replay.file");
+    // names of built-in traces and paths of trace files
+    private static final String TRACES = System.getProperty("texteditor.replay.traces", "typing,paste,replace");
+    // inputs of each built-in trace
+    private static final int INPUTS = Integer.getInteger("texteditor.replay.inputs", 300);
+    // replays of each trace before the one that is timed
+    private static final int WARMUP = Integer.getInteger("texteditor.replay.warmup", 1);
+    // search the tab keeps highlighting while the trace is replayed, none if not set
+    private static final String SEARCH = System.getProperty("texteditor.replay.search");
+    private static final String REPORT = System.getProperty("texteditor.replay.report");
+    // the built-in traces are written here as trace files, to be edited or replayed elsewhere
+    private static final String SAVE_TRACES = System.getProperty("texteditor.replay.saveTraces");
+    // p99 budgets in ms, 0 for none
+    private static final double MAX_FRAME_P99 = Double.parseDouble(System.getProperty("texteditor.replay.maxFrameP99", "0"));
+    private static final double MAX_HIGHLIGHTED_P99 = Double.parseDouble(
+            System.getProperty("texteditor.replay.maxHighlightedP99", "0"));
+    // an input the editor is not done with after this long fails the run
+    private static final long SETTLE_TIMEOUT_SECONDS = 30;
+    private static final boolean MAC = System.getProperty("os.name").toLowerCase().contains("mac");
+
+    private static Scene scene;
+    private static TabPane tabPane;
+
+    // how long an input took until the key event was handled, until the next frame was laid out and until the frame
+    // with the text highlighted again was laid out, in ns
+    record Sample(long handled, long frame, long highlighted) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String text = FILE != null
+                ? FileOperations.readFile(Path.of(FILE), (read, total) -> {
+                }).text()
+                : Corpus.generate(KIND, SIZE);
+        List<Trace> traces = new ArrayList<>();
+        for (String name : TRACES.split(",")) {
+            Trace trace = Trace.get(name.trim(), text, INPUTS);
+            if (SAVE_TRACES != null) {
+                Files.createDirectories(Path.of(SAVE_TRACES));
+                trace.write(Path.of(SAVE_TRACES, trace.getName() + ".trace"));
+            }
+            traces.add(trace);
+        }
+
+        Headless.start();
+        // the FX thread would keep the JVM running after a failure
+        int status;
+        try {
+            status = replayAll(text, traces) ? 1 : 0;
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            status = 2;
+        }
+        Platform.exit();
+        System.exit(status);
+    }
+
+    // replays every trace, reports the results and tells whether any went over a budget
+    private static boolean replayAll(String text, List<Trace> traces) throws Exception {
+        Headless.onFx(() -> {
+            tabPane = new TabPane();
+            scene = new Scene(tabPane, 1200, 800);
+            scene.getStylesheets().add(TextEditor.class.getResource("DarkTheme.css").toExternalForm());
+            Stage stage = new Stage();
+            stage.setScene(scene);
+            stage.show();
+            return null;
+        });
+
+        String source = FILE != null ? FILE : "generated " + KIND;
+        StringBuilder report = new StringBuilder();
+        report.append("{\n  \"document\": {\"source\": ").append(quoted(source))
+                .append(", \"chars\": ").append(text.length()).append(", \"lines\": ")
+                .append(text.chars().filter(c -> c == '\n').count() + 1).append("},\n  \"traces\": [");
+        boolean overBudget = false;
+        for (int i = 0; i < traces.size(); i++) {
+            Trace trace = traces.get(i);
+            for (int j = 0; j < WARMUP; j++) {
+                replay(trace, text);
+            }
+            List<Sample> samples = replay(trace, text);
+            long[] handled = samples.stream().mapToLong(Sample::handled).sorted().toArray();
+            long[] frame = samples.stream().mapToLong(Sample::frame).sorted().toArray();
+            long[] highlighted = samples.stream().mapToLong(Sample::highlighted).sorted().toArray();
+            System.out.printf(Locale.ROOT, "%-10s %5d inputs  handled %s  frame %s  highlighted %s%n", trace.getName(),
+                    samples.size(), summary(handled), summary(frame), summary(highlighted));
+            report.append(i == 0 ? "\n" : ",\n").append("    {\"name\": ").append(quoted(trace.getName()))
+                    .append(", \"inputs\": ").append(samples.size())
+                    .append(", \"handled\": ").append(json(handled))
+                    .append(", \"frame\": ").append(json(frame))
+                    .append(", \"highlighted\": ").append(json(highlighted)).append("}");
+            boolean frameOver = isOver(trace, "frame", frame, MAX_FRAME_P99);
+            boolean highlightedOver = isOver(trace, "highlighted", highlighted, MAX_HIGHLIGHTED_P99);
+            overBudget |= frameOver || highlightedOver;
+        }
+        report.append("\n  ],\n  \"overBudget\": ").append(overBudget).append("\n}\n");
+        if (REPORT != null) {
+            Files.writeString(Path.of(REPORT), report);
+        }
+        return overBudget;
+    }
+
+    // opens a tab with text, replays trace in it and closes it again
+    private static List<Sample> replay(Trace trace, String text) throws Exception {
+        TabData tabData = Headless.onFx(() -> {
+            Tab tab = EditorSetup.createNewTab(trace.getName());
+            tabPane.getTabs().add(tab);
+            tabPane.getSelectionModel().select(tab);
+            TabData data = (TabData) tab.getUserData();
+            data.codeArea.replaceText(text);
+            data.codeArea.getUndoManager().forgetHistory();
+            data.codeArea.moveTo(0);
+            data.codeArea.requestFocus();
+            return data;
+        });
+        SearchHighlighter searchHighlighter = SEARCH == null ? null : Headless.onFx(() -> new SearchHighlighter(tabData,
+                SearchMatches.search(new SearchQuery(SEARCH, true, false, false), tabData.snapshot(), () -> false,
+                        found -> {
+                        }), () -> {
+                }, () -> {
+                }));
+        CodeArea codeArea = tabData.codeArea;
+        // the whole document highlighted before the first input
+        time(tabData, () -> {
+        });
+
+        List<Sample> samples = new ArrayList<>();
+        for (Trace.Step step : trace.getSteps()) {
+            switch (step.action()) {
+                case MOVE -> time(tabData, () -> {
+                    codeArea.moveTo(Math.min(step.from(), codeArea.getLength()));
+                    codeArea.requestFollowCaret();
+                });
+                case SELECT -> time(tabData, () -> {
+                    codeArea.selectRange(Math.min(step.from(), codeArea.getLength()),
+                            Math.min(step.to(), codeArea.getLength()));
+                    codeArea.requestFollowCaret();
+                });
+                case TYPE -> {
+                    for (int i = 0; i < step.text().length(); i++) {
+                        String character = String.valueOf(step.text().charAt(i));
+                        samples.add(time(tabData, () -> type(codeArea, character)));
+                    }
+                }
+                case KEY -> samples.add(time(tabData, () -> press(codeArea, KeyCode.valueOf(step.text()), false)));
+                case PASTE -> {
+                    Headless.onFx(() -> {
+                        ClipboardContent content = new ClipboardContent();
+                        content.putString(step.text());
+                        return Clipboard.getSystemClipboard().setContent(content);
+                    });
+                    samples.add(time(tabData, () -> press(codeArea, KeyCode.V, true)));
+                }
+            }
+        }
+
+        Headless.onFx(() -> {
+            if (searchHighlighter != null) {
+                searchHighlighter.dispose();
+            }
+            tabPane.getTabs().clear();
+            codeArea.clear();
+            codeArea.getUndoManager().forgetHistory();
+            return null;
+        });
+        return samples;
+    }
+
+    // runs input on the FX thread and waits for the first frame laid out after it with the text highlighted again
+    private static Sample time(TabData tabData, Runnable input) throws Exception {
+        CompletableFuture<Sample> done = new CompletableFuture<>();
+        Platform.runLater(() -> {
+            long start = System.nanoTime();
+            input.run();
+            long handled = System.nanoTime() - start;
+            scene.addPostLayoutPulseListener(new Runnable() {
+                private long frame = -1;
+
+                @Override
+                public void run() {
+                    if (done.isDone()) {
+                        return;
+                    }
+                    long now = System.nanoTime() - start;
+                    if (frame == -1) {
+                        frame = now;
+                    }
+                    if (tabData.highlighter.isUpToDate()) {
+                        done.complete(new Sample(handled, frame, now));
+                        // the scene is still walking its listeners
+                        Platform.runLater(() -> scene.removePostLayoutPulseListener(this));
+                    }
+                    else {
+                        // highlighting is done off the FX thread, its result has to be looked for frame by frame
+                        Platform.requestNextPulse();
+                    }
+                }
+            });
+            Platform.requestNextPulse();
+        });
+        return done.get(SETTLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // a key typed the way the platform reports it, pressed, typed and released
+    private static void type(CodeArea codeArea, String character) {
+        KeyCode code = KeyCode.getKeyCode(character.toUpperCase(Locale.ROOT));
+        if (code == null) {
+            code = KeyCode.UNDEFINED;
+        }
+        boolean shift = Character.isUpperCase(character.charAt(0));
+        fire(codeArea, KeyEvent.KEY_PRESSED, KeyEvent.CHAR_UNDEFINED, code, shift, false);
+        fire(codeArea, KeyEvent.KEY_TYPED, character, KeyCode.UNDEFINED, shift, false);
+        fire(codeArea, KeyEvent.KEY_RELEASED, KeyEvent.CHAR_UNDEFINED, code, shift, false);
+    }
+
+    private static void press(CodeArea codeArea, KeyCode code, boolean shortcut) {
+        fire(codeArea, KeyEvent.KEY_PRESSED, KeyEvent.CHAR_UNDEFINED, code, false, shortcut);
+        fire(codeArea, KeyEvent.KEY_RELEASED, KeyEvent.CHAR_UNDEFINED, code, false, shortcut);
+    }
+
+    private static void fire(CodeArea codeArea, EventType<KeyEvent> type, String character, KeyCode code,
+                             boolean shift, boolean shortcut) {
+        Event.fireEvent(codeArea, new KeyEvent(type, character, "", code, shift, shortcut && !MAC, false,
+                shortcut && MAC));
+    }
+
+    private static boolean isOver(Trace trace, String metric, long[] sorted, double budget) {
+        double p99 = percentile(sorted, 99) / 1e6;
+        if (budget > 0 && p99 > budget) {
+            System.out.printf(Locale.ROOT, "%s: %s p99 %.2f ms is over the budget of %.2f ms%n", trace.getName(),
+                    metric, p99, budget);
+            return true;
+        }
+        return false;
+    }
+
+    // nearest rank percentile of sorted
+    private static long percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static String summary(long[] sorted) {
+        return String.format(Locale.ROOT, "p50 %.2f p99 %.2f max %.2f ms", percentile(sorted, 50) / 1e6,
+                percentile(sorted, 99) / 1e6, (sorted.length == 0 ? 0 : sorted[sorted.length - 1]) / 1e6);
+    }
+
+    private static String json(long[] sorted) {
+        return String.format(Locale.ROOT, "{\"p50\": %.3f, \"p99\": %.3f, \"max\": %.3f}", percentile(sorted, 50) / 1e6,
+                percentile(sorted, 99) / 1e6, (sorted.length == 0 ? 0 : sorted[sorted.length - 1]) / 1e6);
+    }
+
+    private static String quoted(String text) {
+        return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
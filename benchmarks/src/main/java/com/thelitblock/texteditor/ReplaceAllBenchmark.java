@@ -0,0 +1,84 @@
+package com.thelitblock.texteditor;
+
+import org.fxmisc.richtext.CodeArea;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// replace all: the edits worked out from the matches, and the whole of it as the search bar does it, the edits
+// committed to a CodeArea as one change on the FX thread. Matches in the Java corpus are close enough to be merged
+// into few edits, in the log corpus most of them are edits of their own
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class ReplaceAllBenchmark {
+    @Param({Corpus.JAVA, Corpus.LOG})
+    public String kind;
+    @Param({"1024", "1048576", "104857600"})
+    public int size;
+    @Param({"plain", "regex"})
+    public String mode;
+
+    private String text;
+    private DocumentSnapshot snapshot;
+    private SearchMatches matches;
+    private String replacement;
+
+    @Setup
+    public void setup() {
+        text = Corpus.generate(kind, size);
+        snapshot = Corpus.snapshot(text);
+        matches = SearchMatches.search(Corpus.query(mode), snapshot, () -> false, found -> {
+        });
+        replacement = mode.equals("regex") ? "$1Error" : "Error";
+    }
+
+    // the editor replace all goes to, it starts every time from the original text with no history to undo
+    @State(Scope.Benchmark)
+    public static class Editor {
+        private CodeArea codeArea;
+
+        @Setup
+        public void setup() throws Exception {
+            Headless.start();
+            codeArea = Headless.onFx(CodeArea::new);
+        }
+
+        @Setup(Level.Invocation)
+        public void resetText(ReplaceAllBenchmark benchmark) throws Exception {
+            Headless.onFx(() -> {
+                codeArea.replaceText(benchmark.text);
+                codeArea.getUndoManager().forgetHistory();
+                return null;
+            });
+        }
+    }
+
+    @Benchmark
+    public void edits(Blackhole blackhole) {
+        blackhole.consume(matches.replaceAll(snapshot, replacement));
+    }
+
+    @Benchmark
+    public int replaceAll(Editor editor) throws Exception {
+        return Headless.onFx(() -> {
+            SearchMatches.apply(editor.codeArea, matches.replaceAll(snapshot, replacement));
+            return editor.codeArea.getLength();
+        });
+    }
+}
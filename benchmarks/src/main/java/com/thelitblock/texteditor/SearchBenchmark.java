@@ -0,0 +1,46 @@
+package com.thelitblock.texteditor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// the background search the search bar runs when the query changes, in each of its modes
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class SearchBenchmark {
+    @Param({Corpus.JAVA, Corpus.LOG})
+    public String kind;
+    @Param({"1024", "1048576", "104857600"})
+    public int size;
+    @Param({"plain", "ignoreCase", "wholeWord", "regex"})
+    public String mode;
+
+    private DocumentSnapshot snapshot;
+    private SearchQuery query;
+
+    @Setup
+    public void setup() {
+        snapshot = Corpus.snapshot(Corpus.generate(kind, size));
+        query = Corpus.query(mode);
+    }
+
+    @Benchmark
+    public int search() {
+        return SearchMatches.search(query, snapshot, () -> false, found -> {
+        }).size();
+    }
+}
@@ -0,0 +1,234 @@
+package com.thelitblock.texteditor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// edits to replay against a document, one step per line of a trace file:
+//   move OFFSET      puts the caret at OFFSET
+//   select FROM TO   selects from FROM to TO
+//   type TEXT        types TEXT, one key at a time
+//   key CODE         presses a key, as in key BACK_SPACE or key ENTER
+//   paste TEXT       pastes TEXT over the selection
+// TEXT is escaped like a Java string, \n \t \r and \\. Lines starting with # are comments. Every key typed or pressed
+// and every paste is an input that is timed, moving the caret and selecting are not
+public class Trace {
+    enum Action {
+        MOVE, SELECT, TYPE, KEY, PASTE
+    }
+
+    record Step(Action action, int from, int to, String text) {
+    }
+
+    private static final Pattern WORD = Pattern.compile("\\b[A-Za-z_]\\w{2,}\\b");
+    private static final String SNIPPET = """
+                // keeps the running total of the values seen so far
+                private long total(List<Integer> values) {
+                    long sum = 0;
+                    for (int value : values) {
+                        if (value > 0 && value != Integer.MAX_VALUE) {
+                            sum += value;
+                        }
+                    }
+                    return sum; /* never negative */
+                }
+
+            """;
+    // a key in this many is a typo that is taken back right away
+    private static final int TYPO_EVERY = 30;
+    // lines of the document pasted at a time
+    private static final int PASTE_LINES = 40;
+
+    private final String name;
+    private final List<Step> steps;
+
+    Trace(String name, List<Step> steps) {
+        this.name = name;
+        this.steps = steps;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    List<Step> getSteps() {
+        return steps;
+    }
+
+    // the built-in trace of that name for text, or the trace in the file of that name
+    static Trace get(String name, String text, int inputs) throws IOException {
+        Random random = new Random(inputs);
+        return switch (name) {
+            case "typing" -> typing(text, inputs, random);
+            case "paste" -> paste(text, inputs, random);
+            case "replace" -> replace(text, inputs, random);
+            default -> read(Path.of(name));
+        };
+    }
+
+    // code typed into the middle of the document, with a typo fixed with backspace now and then
+    static Trace typing(String text, int inputs, Random random) {
+        List<Step> steps = new ArrayList<>();
+        steps.add(new Step(Action.MOVE, text.lastIndexOf('\n', text.length() / 2) + 1, 0, null));
+        int count = 0;
+        StringBuilder typed = new StringBuilder();
+        for (int i = 0; count < inputs; i = (i + 1) % SNIPPET.length()) {
+            char c = SNIPPET.charAt(i);
+            if (random.nextInt(TYPO_EVERY) == 0 && count + 3 <= inputs) {
+                typed.append((char) ('a' + random.nextInt(26)));
+                addTyped(steps, typed);
+                steps.add(new Step(Action.KEY, 0, 0, "BACK_SPACE"));
+                count += 2;
+            }
+            if (c == '\n') {
+                addTyped(steps, typed);
+                steps.add(new Step(Action.KEY, 0, 0, "ENTER"));
+            }
+            else {
+                typed.append(c);
+            }
+            count++;
+        }
+        addTyped(steps, typed);
+        return new Trace("typing", steps);
+    }
+
+    private static void addTyped(List<Step> steps, StringBuilder typed) {
+        if (!typed.isEmpty()) {
+            steps.add(new Step(Action.TYPE, 0, 0, typed.toString()));
+            typed.setLength(0);
+        }
+    }
+
+    // blocks of the document pasted at the start of random lines. They go in from the end of the document to its
+    // start, so every paste lands where it was meant to whatever was pasted before it
+    static Trace paste(String text, int inputs, Random random) {
+        List<Integer> offsets = new ArrayList<>();
+        for (int i = 0; i < inputs; i++) {
+            offsets.add(text.lastIndexOf('\n', random.nextInt(text.length() + 1)) + 1);
+        }
+        offsets.sort(Comparator.reverseOrder());
+        List<Step> steps = new ArrayList<>();
+        for (int offset : offsets) {
+            steps.add(new Step(Action.MOVE, offset, 0, null));
+            steps.add(new Step(Action.PASTE, 0, 0, lines(text, random.nextInt(text.length() + 1), PASTE_LINES)));
+        }
+        return new Trace("paste", steps);
+    }
+
+    // words selected and pasted over with a new name, and every fifth time a few lines pasted over with others. Like
+    // the pastes they go from the end of the document to its start
+    static Trace replace(String text, int inputs, Random random) {
+        List<Step> replacements = new ArrayList<>();
+        Matcher word = WORD.matcher(text);
+        for (int i = 0; i < inputs; i++) {
+            int offset = random.nextInt(text.length() + 1);
+            if (i % 5 == 4) {
+                int from = text.lastIndexOf('\n', offset) + 1;
+                int to = from + lines(text, from, 1 + random.nextInt(10)).length();
+                replacements.add(new Step(Action.PASTE, from, to, lines(text, random.nextInt(text.length() + 1), 5)));
+            }
+            else if (word.find(offset) || word.find(0)) {
+                replacements.add(new Step(Action.PASTE, word.start(), word.end(), word.group() + "Renamed"));
+            }
+        }
+        replacements.sort(Comparator.comparingInt(Step::from).reversed());
+        List<Step> steps = new ArrayList<>();
+        int previousFrom = Integer.MAX_VALUE;
+        for (Step replacement : replacements) {
+            // a replacement must not reach into the text the one before it left
+            if (replacement.to() > previousFrom) {
+                continue;
+            }
+            steps.add(new Step(Action.SELECT, replacement.from(), replacement.to(), null));
+            steps.add(new Step(Action.PASTE, 0, 0, replacement.text()));
+            previousFrom = replacement.from();
+        }
+        return new Trace("replace", steps);
+    }
+
+    // count lines of text from the line offset is in, with their line breaks
+    private static String lines(String text, int offset, int count) {
+        int from = text.lastIndexOf('\n', offset - 1) + 1;
+        int to = from;
+        for (int i = 0; i < count && to < text.length(); i++) {
+            int lineEnd = text.indexOf('\n', to);
+            to = lineEnd == -1 ? text.length() : lineEnd + 1;
+        }
+        return text.substring(from, to);
+    }
+
+    static Trace read(Path file) throws IOException {
+        List<Step> steps = new ArrayList<>();
+        List<String> lines = Files.readAllLines(file);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split(" ", 2);
+            String argument = parts.length == 2 ? parts[1] : "";
+            try {
+                steps.add(switch (parts[0]) {
+                    case "move" -> new Step(Action.MOVE, Integer.parseInt(argument.trim()), 0, null);
+                    case "select" -> {
+                        String[] range = argument.trim().split(" +");
+                        yield new Step(Action.SELECT, Integer.parseInt(range[0]), Integer.parseInt(range[1]), null);
+                    }
+                    case "type" -> new Step(Action.TYPE, 0, 0, unescape(argument));
+                    case "key" -> new Step(Action.KEY, 0, 0, argument.trim());
+                    case "paste" -> new Step(Action.PASTE, 0, 0, unescape(argument));
+                    default -> throw new IllegalArgumentException("unknown step " + parts[0]);
+                });
+            }
+            catch (RuntimeException e) {
+                throw new IOException(file + ":" + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        String name = file.getFileName().toString();
+        return new Trace(name.endsWith(".trace") ? name.substring(0, name.length() - 6) : name, steps);
+    }
+
+    void write(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (Step step : steps) {
+            lines.add(switch (step.action()) {
+                case MOVE -> "move " + step.from();
+                case SELECT -> "select " + step.from() + " " + step.to();
+                case TYPE -> "type " + escape(step.text());
+                case KEY -> "key " + step.text();
+                case PASTE -> "paste " + escape(step.text());
+            });
+        }
+        Files.write(file, lines);
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t");
+    }
+
+    private static String unescape(String text) {
+        StringBuilder unescaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '\\' || i + 1 == text.length()) {
+                unescaped.append(c);
+                continue;
+            }
+            char escaped = text.charAt(++i);
+            unescaped.append(switch (escaped) {
+                case 'n' -> '\n';
+                case 'r' -> '\r';
+                case 't' -> '\t';
+                default -> escaped;
+            });
+        }
+        return unescaped.toString();
+    }
+}
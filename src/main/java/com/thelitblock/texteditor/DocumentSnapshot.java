@@ -0,0 +1,93 @@
+package com.thelitblock.texteditor;
+
+import org.fxmisc.richtext.model.StyledDocument;
+import org.fxmisc.richtext.model.TwoDimensional.Bias;
+import org.fxmisc.richtext.model.TwoDimensional.Position;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// immutable view of a tab's text backed by RichTextFX's persistent paragraph tree, so taking one is O(1) and
+// reading it never copies the whole document. Instances cache the last paragraph read and are meant for one thread.
+public class DocumentSnapshot implements CharSequence {
+    private final StyledDocument<?, String, ?> document;
+
+    private int cachedParagraph = -1;
+    private int cachedParagraphStart;
+    private String cachedParagraphText;
+
+    DocumentSnapshot(StyledDocument<?, String, ?> document) {
+        this.document = document;
+    }
+
+    int getParagraphCount() {
+        return document.getParagraphs().size();
+    }
+
+    String getParagraph(int index) {
+        return document.getParagraph(index).getText();
+    }
+
+    int getParagraphIndex(int offset) {
+        return document.offsetToPosition(offset, Bias.Forward).getMajor();
+    }
+
+    int getParagraphStart(int index) {
+        return document.getAbsolutePosition(index, 0);
+    }
+
+    @Override
+    public int length() {
+        return document.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        cacheParagraphAt(index);
+        int column = index - cachedParagraphStart;
+        return column == cachedParagraphText.length() ? '\n' : cachedParagraphText.charAt(column);
+    }
+
+    // copies paragraph by paragraph, document.getText splits the whole paragraph tree at both ends
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        StringBuilder builder = new StringBuilder(end - start);
+        int index = start;
+        while (index < end) {
+            cacheParagraphAt(index);
+            int to = Math.min(end - cachedParagraphStart, cachedParagraphText.length());
+            builder.append(cachedParagraphText, index - cachedParagraphStart, to);
+            index = cachedParagraphStart + to;
+            if (index < end) {
+                builder.append('\n');
+                index++;
+            }
+        }
+        return builder.toString();
+    }
+
+    private void cacheParagraphAt(int index) {
+        if (cachedParagraph == -1 || index < cachedParagraphStart || index > cachedParagraphStart + cachedParagraphText.length()) {
+            Position position = document.offsetToPosition(index, Bias.Forward);
+            cachedParagraph = position.getMajor();
+            cachedParagraphStart = index - position.getMinor();
+            cachedParagraphText = getParagraph(cachedParagraph);
+        }
+    }
+
+    // writes the text paragraph by paragraph, joining paragraphs with the given line separator
+    void writeTo(Writer writer, String lineSeparator) throws IOException {
+        int paragraphCount = getParagraphCount();
+        for (int i = 0; i < paragraphCount; i++) {
+            if (i > 0) {
+                writer.write(lineSeparator);
+            }
+            writer.write(getParagraph(i));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return document.getText();
+    }
+}
@@ -0,0 +1,85 @@
+package com.thelitblock.texteditor;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.layout.StackPane;
+import javafx.scene.text.Font;
+import javafx.util.Duration;
+import org.fxmisc.flowless.VirtualizedScrollPane;
+import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.LineNumberFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+
+// empty editors built ahead of time, so opening a tab only has to hand one out. They are styled and laid out in a
+// scene of their own while nothing else is going on, and the pool is topped up after every editor taken from it
+public class EditorPool {
+    static final int SIZE = Integer.getInteger("texteditor.tabs.pool", 2);
+    // lets the tab that took an editor get on screen before the next one is built
+    private static final Duration FILL_DELAY = Duration.millis(300);
+
+    private static final Deque<VirtualizedScrollPane<CodeArea>> editors = new ArrayDeque<>();
+    private static boolean fontLoaded = false;
+    private static boolean filling = false;
+
+    static VirtualizedScrollPane<CodeArea> take() {
+        VirtualizedScrollPane<CodeArea> editor = editors.poll();
+        if (editor == null) {
+            editor = create();
+        }
+        else {
+            ((StackPane) editor.getParent()).getChildren().remove(editor);
+        }
+        fill();
+        return editor;
+    }
+
+    static void fill() {
+        if (filling || editors.size() >= SIZE) {
+            return;
+        }
+        filling = true;
+        PauseTransition delay = new PauseTransition(FILL_DELAY);
+        delay.setOnFinished(event -> fillOne());
+        delay.play();
+    }
+
+    // one editor per event, so building the pool never holds up a frame for long
+    private static void fillOne() {
+        // a scene per editor, a parent that is never drawn would keep every child removed from it
+        StackPane root = new StackPane();
+        Scene scene = new Scene(root, 800, 600);
+        // the theme of the editor's scene, so the editor is styled as it will be shown
+        if (TextEditor.scene != null) {
+            scene.getStylesheets().setAll(TextEditor.scene.getStylesheets());
+        }
+        // added once the scene is set up, the editor styles its first cells right away
+        VirtualizedScrollPane<CodeArea> editor = create();
+        root.getChildren().add(editor);
+        root.applyCss();
+        root.layout();
+        editors.add(editor);
+        if (editors.size() < SIZE) {
+            Platform.runLater(EditorPool::fillOne);
+        }
+        else {
+            filling = false;
+        }
+    }
+
+    private static VirtualizedScrollPane<CodeArea> create() {
+        // registers the font family the editor style asks for, once for all editors
+        if (!fontLoaded) {
+            Font.loadFont(Objects.requireNonNull(TextEditor.class.getResourceAsStream("Menlo-Regular.woff")), 12);
+            fontLoaded = true;
+        }
+        CodeArea codeArea = new CodeArea();
+        codeArea.setId("codeArea");
+        codeArea.setParagraphGraphicFactory(LineNumberFactory.get(codeArea));
+        codeArea.setStyle("-fx-font-family: 'Menlo'; -fx-font-size: 10pt");
+        return new VirtualizedScrollPane<>(codeArea);
+    }
+}
@@ -6,14 +6,13 @@ import javafx.scene.control.*;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
-import javafx.scene.text.Font;
 import org.fxmisc.flowless.VirtualizedScrollPane;
 import org.fxmisc.richtext.CodeArea;
-import org.fxmisc.richtext.LineNumberFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
-
-import static com.thelitblock.texteditor.SyntaxHighlighting.computeHighlighting;
+import java.util.function.Predicate;
 
 public class EditorSetup {
     private MenuBar menuBar;
@@ -22,18 +21,17 @@ public class EditorSetup {
     private TerminalSetup terminalSetup;
     private static Set<Integer> untitledNumbers = new HashSet<>();
     private static int untitledCounter = 1;
-    private static SearchBarSetup searchBarSetup;
+    private static TabHibernator tabHibernator;
 
-    public EditorSetup(MenuBar menuBar, HBox searchBar, TabPane tabPane, TerminalSetup terminalSetup, SearchBarSetup searchBarSetup) {
+    public EditorSetup(MenuBar menuBar, HBox searchBar, TabPane tabPane, TerminalSetup terminalSetup, Predicate<TabData> searched) {
         this.menuBar = menuBar;
         this.searchBar = searchBar;
         EditorSetup.tabPane = tabPane;
         this.terminalSetup = terminalSetup;
-        EditorSetup.searchBarSetup = searchBarSetup;
-        setupEditor();
+        setupEditor(searched);
     }
 
-    private void setupEditor() {
+    private void setupEditor(Predicate<TabData> searched) {
         Tab defaultTab = createNewTab("Untitled");
         tabPane.getTabs().add(defaultTab);
         untitledNumbers.add(untitledCounter++);
@@ -42,6 +40,7 @@ public class EditorSetup {
         plusTab.setClosable(false);
         tabPane.getTabs().add(plusTab);
 
+        tabHibernator = new TabHibernator(tabPane, searched);
         tabPane.getSelectionModel().selectedItemProperty().addListener((obs, oldTab, newTab) -> {
             if (newTab == plusTab) {
                 String title = getNextUntitledName();
@@ -63,38 +62,56 @@ public class EditorSetup {
     }
 
     static Tab createNewTab(String title) {
-        CodeArea codeArea = new CodeArea();
-        codeArea.setId("codeArea");
-        codeArea.setParagraphGraphicFactory(LineNumberFactory.get(codeArea));
-
-        Font menloFont = Font.loadFont(Objects.requireNonNull(TextEditor.class.getResourceAsStream("Menlo-Regular.woff")), 12);
-        codeArea.setStyle("-fx-font-family: 'Menlo'; -fx-font-size: 10pt");
-
-        codeArea.textProperty().addListener((observable, oldValue, newValue) -> {
-            searchBarSetup.updateSearchResults(searchBarSetup.getSearchText());
-            Tab currentTab = tabPane.getSelectionModel().getSelectedItem();
-            TabData tabData = (TabData) currentTab.getUserData();
-            if (tabData != null) {
-                tabData.isChanged = true;
-                if (!currentTab.getText().endsWith("*")) {
-                    currentTab.setText(currentTab.getText() + "*");
-                }
+        long start = System.nanoTime();
+        Tab tab = getTab(title);
+        createCodeArea(tab, "");
+        Timing.logAfterLayout("open tab " + title, start);
+        return tab;
+    }
+
+    // sets up an editor from the pool with text, for a new tab and for a tab that wakes up from hibernation
+    static CodeArea createCodeArea(Tab tab, String text) {
+        VirtualizedScrollPane<CodeArea> editor = EditorPool.take();
+        CodeArea codeArea = editor.getContent();
+        if (!text.isEmpty()) {
+            codeArea.replaceText(text);
+            // the text the tab starts with cannot be undone
+            codeArea.getUndoManager().forgetHistory();
+            codeArea.moveTo(0);
+        }
+
+        TabData tabData = (TabData) tab.getUserData();
+        tabData.codeArea = codeArea;
+        tabData.highlighter = new IncrementalHighlighter(codeArea);
+        codeArea.multiPlainChanges().subscribe(changes -> {
+            // the editor was let go of by a hibernating tab
+            if (tabData.codeArea != codeArea) {
+                return;
+            }
+            tabData.version++;
+            tabData.isChanged = true;
+            if (!tab.getText().endsWith("*")) {
+                tab.setText(tab.getText() + "*");
             }
         });
+        tab.setContent(editor);
+        return codeArea;
+    }
 
-        codeArea.richChanges()
-            .filter(ch -> !ch.getInserted().equals(ch.getRemoved()))
-            .subscribe(change -> {
-                codeArea.setStyleSpans(0, computeHighlighting(codeArea.getText()));
-            });
-
-        return getTab(codeArea, title);
+    static Tab createLargeFileTab(File file) throws IOException {
+        LargeFileView largeFileView = new LargeFileView(file);
+        Tab tab = new Tab(file.getName(), largeFileView.getNode());
+        TabData tabData = new TabData(null);
+        tabData.file = file;
+        tabData.largeFileView = largeFileView;
+        tab.setUserData(tabData);
+        tab.setOnClosed(event -> largeFileView.close());
+        return tab;
     }
 
-    private static Tab getTab(CodeArea codeArea, String title) {
-        VirtualizedScrollPane<CodeArea> virtualizedScrollPane = new VirtualizedScrollPane<>(codeArea);
-        Tab tab = new Tab(title, virtualizedScrollPane);
-        TabData tabData = new TabData(codeArea);
+    private static Tab getTab(String title) {
+        Tab tab = new Tab(title);
+        TabData tabData = new TabData(null);
         tab.setUserData(tabData);
 
         tab.setOnCloseRequest(event -> {
@@ -113,7 +130,15 @@ public class EditorSetup {
                 Optional<ButtonType> result = alert.showAndWait();
                 if (result.isPresent()) {
                     if (result.get() == btnSave) {
-                        TextEditor.saveFile();
+                        // the tab closes once its own text is on disk, it stays open when the save fails or is
+                        // cancelled
+                        event.consume();
+                        String tabText = tab.getText();
+                        TextEditor.saveTab(tab, () -> {
+                            releaseUntitledName(tabText);
+                            tabPane.getTabs().remove(tab);
+                        });
+                        return;
                     }
                     else if (result.get() == btnCancel) {
                         event.consume();
@@ -121,19 +146,28 @@ public class EditorSetup {
                     }
                 }
             }
-            String tabText = tab.getText().replace("*", "");
-            if (tabText.startsWith("Untitled ")) {
-                int number = Integer.parseInt(tabText.substring(9));
-                untitledNumbers.add(number);
-            }
-            else if (tabText.equals("Untitled")) {
-                untitledNumbers.add(0);
-            }
+            releaseUntitledName(tab.getText());
         });
 
         return tab;
     }
 
+    private static void releaseUntitledName(String tabText) {
+        tabText = tabText.replace("*", "");
+        if (tabText.startsWith("Untitled ")) {
+            int number = Integer.parseInt(tabText.substring(9));
+            untitledNumbers.add(number);
+        }
+        else if (tabText.equals("Untitled")) {
+            untitledNumbers.add(0);
+        }
+    }
+
+    // brings a hibernated tab back into an editor, a tab that is awake is left as it is
+    static void wake(Tab tab) {
+        tabHibernator.wake(tab);
+    }
+
     static String getNextUntitledName() {
         if (!untitledNumbers.isEmpty()) {
             int nextNumber = Collections.min(untitledNumbers);
@@ -0,0 +1,370 @@
+package com.thelitblock.texteditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+// the paths of the files below a workspace root for quick open, relative to the root and packed into one char array,
+// with a fuzzy scorer that matches the query as a subsequence of a path. Instances are immutable, a changed workspace
+// gets a new one, scanned or built from the paths the trigram index has
+public class FileFinder {
+    static final int MAX_RESULTS = 100;
+    // candidates scored by one task of the parallel stream
+    private static final int CHUNK_SIZE = 32 * 1024;
+    private static final int BOUNDARY_BONUS = 8;
+    private static final int CONSECUTIVE_BONUS = 5;
+    // for a query that matches inside the file name, not only spread over the folders on the way to it
+    private static final int NAME_BONUS = 40;
+    // mask bit shared by every char without one of its own
+    private static final long OTHER_CHARS_BIT = 1L << 63;
+
+    private final Path root;
+    private final int count;
+    private final char[] chars;
+    // case-folded copy of chars, matched against the folded query
+    private final char[] folded;
+    // path i is chars[starts[i]] up to chars[starts[i + 1]], its file name starts at nameStarts[i]
+    private final int[] starts;
+    private final int[] nameStarts;
+    // one bit per kind of char the path contains, a path that lacks a char of the query is skipped without a scan
+    private final long[] masks;
+    // the same for the file name alone, and for the chars that start a word of the file name
+    private final long[] nameMasks;
+    private final long[] nameWordStartMasks;
+
+    // the paths that matched a query, in path order, and the best of them. Typing on rescores only those paths
+    static class Matches {
+        private final FileFinder finder;
+        private final String query;
+        private final int[] ids;
+        private final int[] best;
+
+        private Matches(FileFinder finder, String query, int[] ids, int[] best) {
+            this.finder = finder;
+            this.query = query;
+            this.ids = ids;
+            this.best = best;
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        List<String> bestPaths() {
+            return Arrays.stream(best).mapToObj(finder::getPath).toList();
+        }
+    }
+
+    private FileFinder(Path root, int count, char[] chars, int[] starts, int[] nameStarts) {
+        this.root = root;
+        this.count = count;
+        this.chars = chars;
+        this.starts = starts;
+        this.nameStarts = nameStarts;
+        this.folded = new char[chars.length];
+        this.masks = new long[count];
+        this.nameMasks = new long[count];
+        this.nameWordStartMasks = new long[count];
+        for (int i = 0; i < count; i++) {
+            long mask = 0;
+            long nameMask = 0;
+            long nameWordStartMask = 0;
+            for (int j = starts[i]; j < starts[i + 1]; j++) {
+                folded[j] = SearchQuery.fold(chars[j]);
+                long bit = maskBit(folded[j]);
+                mask |= bit;
+                if (j >= nameStarts[i]) {
+                    nameMask |= bit;
+                    if (j == starts[i] || isWordStart(j)) {
+                        nameWordStartMask |= bit;
+                    }
+                }
+            }
+            masks[i] = mask;
+            nameMasks[i] = nameMask;
+            nameWordStartMasks[i] = nameWordStartMask;
+        }
+    }
+
+    // collects the files below root that are not ignored, until stopped returns true
+    static FileFinder scan(Path root, BooleanSupplier stopped) throws IOException {
+        PathBuilder paths = new PathBuilder();
+        IgnoreRules.walk(root, stopped, (file, attributes) -> paths.add(root.relativize(file)));
+        return new FileFinder(root, paths.count, Arrays.copyOf(paths.chars, paths.length),
+                Arrays.copyOf(paths.starts, paths.count + 1), Arrays.copyOf(paths.nameStarts, paths.count));
+    }
+
+    // the files of paths, relative to root as the trigram index keeps them
+    static FileFinder of(Path root, List<String> paths) {
+        PathBuilder builder = new PathBuilder();
+        for (String path : paths) {
+            builder.add(path.replace(File.separatorChar, '/'));
+        }
+        return new FileFinder(root, builder.count, Arrays.copyOf(builder.chars, builder.length),
+                Arrays.copyOf(builder.starts, builder.count + 1), Arrays.copyOf(builder.nameStarts, builder.count));
+    }
+
+    Path getRoot() {
+        return root;
+    }
+
+    int size() {
+        return count;
+    }
+
+    String getPath(int id) {
+        return new String(chars, starts[id], starts[id + 1] - starts[id]);
+    }
+
+    // scores the paths against query in parallel. When previous holds the matches of a prefix of query, only those
+    // paths can still match and only they are scored
+    Matches find(String query, Matches previous) {
+        char[] foldedQuery = foldQuery(query);
+        String key = new String(foldedQuery);
+        if (foldedQuery.length == 0) {
+            return new Matches(this, key, new int[0], new int[0]);
+        }
+        int[] candidates = null;
+        int candidateCount = count;
+        if (previous != null && previous.finder == this && key.startsWith(previous.query)) {
+            candidates = previous.ids;
+            candidateCount = candidates.length;
+        }
+        long queryMask = 0;
+        for (char c : foldedQuery) {
+            queryMask |= maskBit(c);
+        }
+
+        int[] from = candidates;
+        long mask = queryMask;
+        int total = candidateCount;
+        List<Chunk> chunks = IntStream.range(0, (total + CHUNK_SIZE - 1) / CHUNK_SIZE)
+                .parallel()
+                .mapToObj(chunk -> scoreChunk(foldedQuery, mask, from, chunk * CHUNK_SIZE,
+                        Math.min(total, (chunk + 1) * CHUNK_SIZE)))
+                .toList();
+
+        int matchCount = 0;
+        for (Chunk chunk : chunks) {
+            matchCount += chunk.matchCount;
+        }
+        int[] ids = new int[matchCount];
+        Best best = new Best();
+        int offset = 0;
+        for (Chunk chunk : chunks) {
+            System.arraycopy(chunk.ids, 0, ids, offset, chunk.matchCount);
+            offset += chunk.matchCount;
+            for (int i = 0; i < chunk.best.size; i++) {
+                best.add(chunk.best.ids[i], chunk.best.scores[i]);
+            }
+        }
+        return new Matches(this, key, ids, Arrays.copyOf(best.ids, best.size));
+    }
+
+    private Chunk scoreChunk(char[] query, long queryMask, int[] candidates, int from, int to) {
+        Chunk chunk = new Chunk(to - from);
+        // the most a path can score before its length is taken off, when every char starts a word and follows the one
+        // before it, which the first char cannot
+        int maxScore = query.length * (1 + BOUNDARY_BONUS) + (query.length - 1) * CONSECUTIVE_BONUS;
+        // a single char with a mask bit of its own is in every path the mask lets through, so those paths are counted
+        // and most of them ruled out of the best without a scan
+        boolean maskMatches = query.length == 1 && queryMask != OTHER_CHARS_BIT;
+        for (int i = from; i < to; i++) {
+            int id = candidates == null ? i : candidates[i];
+            if ((queryMask & ~masks[id]) != 0) {
+                continue;
+            }
+            int length = starts[id + 1] - starts[id];
+            if (maskMatches) {
+                chunk.ids[chunk.matchCount++] = id;
+                // the rightmost match is in the file name exactly when the name has the char, and it can only start a
+                // word when the char starts one there
+                int bound = (queryMask & nameMasks[id]) == 0
+                        ? maxScore - length
+                        : 1 + ((queryMask & nameWordStartMasks[id]) != 0 ? BOUNDARY_BONUS : 0) + NAME_BONUS - length;
+                if (chunk.best.isFull() && bound <= chunk.best.worstScore()) {
+                    continue;
+                }
+            }
+            int start = matchStart(query, id);
+            if (start == -1) {
+                continue;
+            }
+            if (!maskMatches) {
+                chunk.ids[chunk.matchCount++] = id;
+            }
+            // most paths of a short query cannot beat the results found so far and are never scored
+            int bonus = start >= nameStarts[id] ? NAME_BONUS : 0;
+            if (chunk.best.isFull() && maxScore + bonus - length <= chunk.best.worstScore()) {
+                continue;
+            }
+            chunk.best.add(id, score(query, starts[id], start, starts[id + 1]) + bonus - length);
+        }
+        return chunk;
+    }
+
+    // start of the rightmost match of query in path id, or -1. A match that starts inside the file name is found
+    // whenever there is one
+    private int matchStart(char[] query, int id) {
+        int matched = query.length;
+        int start = starts[id];
+        for (int i = starts[id + 1] - 1; i >= start; i--) {
+            if (folded[i] == query[matched - 1] && --matched == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // matches query from start, where it is known to match, chars that follow each other or start a word score more
+    private int score(char[] query, int pathStart, int start, int end) {
+        int score = 0;
+        int matched = 0;
+        int previous = -2;
+        for (int i = start; i < end && matched < query.length; i++) {
+            if (folded[i] != query[matched]) {
+                continue;
+            }
+            score++;
+            if (i == previous + 1) {
+                score += CONSECUTIVE_BONUS;
+            }
+            if (i == pathStart || isWordStart(i)) {
+                score += BOUNDARY_BONUS;
+            }
+            previous = i;
+            matched++;
+        }
+        return score;
+    }
+
+    private boolean isWordStart(int i) {
+        char before = chars[i - 1];
+        return before == '/' || before == '.' || before == '_' || before == '-' || before == ' '
+                || (Character.isLowerCase(before) && Character.isUpperCase(chars[i]));
+    }
+
+    // folded query without spaces, with backslashes read as the separator of the stored paths
+    private static char[] foldQuery(String query) {
+        StringBuilder builder = new StringBuilder(query.length());
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                builder.append(c == '\\' ? '/' : SearchQuery.fold(c));
+            }
+        }
+        return builder.toString().toCharArray();
+    }
+
+    private static long maskBit(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return 1L << (c - 'a');
+        }
+        if (c >= '0' && c <= '9') {
+            return 1L << (26 + c - '0');
+        }
+        return switch (c) {
+            case '.' -> 1L << 36;
+            case '_' -> 1L << 37;
+            case '-' -> 1L << 38;
+            case '/' -> 1L << 39;
+            default -> OTHER_CHARS_BIT;
+        };
+    }
+
+    private static class Chunk {
+        final int[] ids;
+        int matchCount = 0;
+        final Best best = new Best();
+
+        Chunk(int size) {
+            ids = new int[size];
+        }
+    }
+
+    // the MAX_RESULTS best scores seen so far, best first. Ties go to the path added first
+    private static class Best {
+        final int[] ids = new int[MAX_RESULTS];
+        final int[] scores = new int[MAX_RESULTS];
+        int size = 0;
+
+        boolean isFull() {
+            return size == MAX_RESULTS;
+        }
+
+        int worstScore() {
+            return scores[size - 1];
+        }
+
+        void add(int id, int score) {
+            if (size == MAX_RESULTS && score <= scores[size - 1]) {
+                return;
+            }
+            int i = Math.min(size, MAX_RESULTS - 1);
+            while (i > 0 && scores[i - 1] < score) {
+                ids[i] = ids[i - 1];
+                scores[i] = scores[i - 1];
+                i--;
+            }
+            ids[i] = id;
+            scores[i] = score;
+            size = Math.min(size + 1, MAX_RESULTS);
+        }
+    }
+
+    // growable arrays the walk appends paths to, always with / between names
+    private static class PathBuilder {
+        char[] chars = new char[1 << 16];
+        int[] starts = new int[1024];
+        int[] nameStarts = new int[1024];
+        int length = 0;
+        int count = 0;
+
+        void add(Path path) {
+            if (count + 1 == starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+                nameStarts = Arrays.copyOf(nameStarts, nameStarts.length * 2);
+            }
+            starts[count] = length;
+            for (int i = 0; i < path.getNameCount(); i++) {
+                if (i > 0) {
+                    append('/');
+                }
+                if (i == path.getNameCount() - 1) {
+                    nameStarts[count] = length;
+                }
+                String name = path.getName(i).toString();
+                for (int j = 0; j < name.length(); j++) {
+                    append(name.charAt(j));
+                }
+            }
+            count++;
+            starts[count] = length;
+        }
+
+        void add(String path) {
+            if (count + 1 == starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+                nameStarts = Arrays.copyOf(nameStarts, nameStarts.length * 2);
+            }
+            starts[count] = length;
+            nameStarts[count] = length + path.lastIndexOf('/') + 1;
+            for (int i = 0; i < path.length(); i++) {
+                append(path.charAt(i));
+            }
+            count++;
+            starts[count] = length;
+        }
+
+        private void append(char c) {
+            if (length == chars.length) {
+                chars = Arrays.copyOf(chars, chars.length * 2);
+            }
+            chars[length++] = c;
+        }
+    }
+}
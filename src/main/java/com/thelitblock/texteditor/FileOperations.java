@@ -0,0 +1,337 @@
+package com.thelitblock.texteditor;
+
+import javafx.concurrent.Task;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+
+public class FileOperations {
+    private static final int CHUNK_SIZE = 1 << 20;
+    // files that are not valid UTF-8 and have no BOM are read byte-for-byte
+    static final Charset FALLBACK_CHARSET = StandardCharsets.ISO_8859_1;
+
+    static final ExecutorService ioExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "file-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    record LoadedFile(String text, Charset charset, boolean byteOrderMark, String lineSeparator) {
+    }
+
+    // modification time and size of a file right after it was written
+    record SavedFile(long lastModified, long length) {
+    }
+
+    static Task<LoadedFile> createLoadTask(File file) {
+        return new Task<>() {
+            @Override
+            protected LoadedFile call() throws IOException {
+                return readFile(file.toPath(), this::updateProgress);
+            }
+        };
+    }
+
+    static LoadedFile readFile(Path path, BiConsumer<Long, Long> progress) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException("File too large: " + path);
+            }
+
+            ByteBuffer head = ByteBuffer.allocate(3);
+            channel.read(head, 0);
+            head.flip();
+            int bomLength = 0;
+            Charset charset = StandardCharsets.UTF_8;
+            if (head.remaining() >= 3 && (head.get(0) & 0xFF) == 0xEF && (head.get(1) & 0xFF) == 0xBB && (head.get(2) & 0xFF) == 0xBF) {
+                bomLength = 3;
+            }
+            else if (head.remaining() >= 2 && (head.get(0) & 0xFF) == 0xFE && (head.get(1) & 0xFF) == 0xFF) {
+                bomLength = 2;
+                charset = StandardCharsets.UTF_16BE;
+            }
+            else if (head.remaining() >= 2 && (head.get(0) & 0xFF) == 0xFF && (head.get(1) & 0xFF) == 0xFE) {
+                bomLength = 2;
+                charset = StandardCharsets.UTF_16LE;
+            }
+
+            try {
+                return decode(channel, bomLength, size, charset, bomLength > 0, progress);
+            }
+            catch (CharacterCodingException e) {
+                if (bomLength > 0) {
+                    throw e;
+                }
+                return decode(channel, 0, size, FALLBACK_CHARSET, false, progress);
+            }
+        }
+    }
+
+    private static LoadedFile decode(FileChannel channel, long start, long size, Charset charset, boolean byteOrderMark,
+                                     BiConsumer<Long, Long> progress) throws IOException {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer in = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        CharBuffer out = CharBuffer.allocate(CHUNK_SIZE);
+        LineEndingNormalizer text = new LineEndingNormalizer((int) size);
+
+        channel.position(start);
+        long bytesRead = start;
+        boolean endOfInput = false;
+        while (!endOfInput) {
+            int read = channel.read(in);
+            endOfInput = read == -1;
+            bytesRead += Math.max(read, 0);
+            in.flip();
+            CoderResult result;
+            do {
+                result = decoder.decode(in, out, endOfInput);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                text.append(out);
+            } while (result.isOverflow());
+            in.compact();
+            progress.accept(bytesRead, size);
+        }
+        CoderResult result;
+        do {
+            result = decoder.flush(out);
+            text.append(out);
+        } while (result.isOverflow());
+
+        return new LoadedFile(text.toString(), charset, byteOrderMark, text.lineSeparator());
+    }
+
+    static Task<SavedFile> createSaveTask(DocumentSnapshot snapshot, File file, Charset charset, boolean byteOrderMark,
+                                          String lineSeparator) {
+        return new Task<>() {
+            @Override
+            protected SavedFile call() throws IOException {
+                return writeFile(snapshot, file.toPath(), charset, byteOrderMark, lineSeparator, this::updateProgress);
+            }
+        };
+    }
+
+    // writes to a temporary file next to the target and only renames it over the target once it is on disk,
+    // so a failed or interrupted save leaves the previous contents intact
+    static SavedFile writeFile(DocumentSnapshot snapshot, Path path, Charset charset, boolean byteOrderMark,
+                               String lineSeparator, BiConsumer<Long, Long> progress) throws IOException {
+        Path target = Files.exists(path) ? path.toRealPath() : path.toAbsolutePath();
+        Path temp = target.resolveSibling("." + target.getFileName() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                EncodingWriter writer = new EncodingWriter(channel, charset, snapshot.length(), progress);
+                if (byteOrderMark) {
+                    writer.write('\uFEFF');
+                }
+                snapshot.writeTo(writer, lineSeparator);
+                writer.finish();
+                channel.force(true);
+            }
+            if (Files.exists(target) && Files.getFileStore(target).supportsFileAttributeView(PosixFileAttributeView.class)) {
+                Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            forceDirectory(target.getParent());
+            BasicFileAttributes attributes = Files.readAttributes(target, BasicFileAttributes.class);
+            return new SavedFile(attributes.lastModifiedTime().toMillis(), attributes.size());
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // the rename is only sure to survive a crash once the folder holding it is on disk as well. Folders cannot be
+    // opened as channels everywhere, on Windows opening one fails and the rename is left to the file system
+    private static void forceDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+        catch (IOException e) {
+            // not supported here, the file itself is on disk already
+        }
+    }
+
+    // encodes into a fixed-size buffer and writes it to the channel each time the char buffer fills up
+    private static class EncodingWriter extends Writer {
+        private final FileChannel channel;
+        private final CharsetEncoder encoder;
+        private final CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+        private final ByteBuffer bytes = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        private final long totalChars;
+        private final BiConsumer<Long, Long> progress;
+        private long charsWritten = 0;
+
+        EncodingWriter(FileChannel channel, Charset charset, long totalChars, BiConsumer<Long, Long> progress) {
+            this.channel = channel;
+            this.encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+            this.totalChars = totalChars;
+            this.progress = progress;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            while (length > 0) {
+                int count = Math.min(length, chars.remaining());
+                chars.put(buffer, offset, count);
+                offset += count;
+                length -= count;
+                if (!chars.hasRemaining()) {
+                    encode(false);
+                }
+            }
+        }
+
+        @Override
+        public void write(String text, int offset, int length) throws IOException {
+            while (length > 0) {
+                int count = Math.min(length, chars.remaining());
+                chars.put(text, offset, offset + count);
+                offset += count;
+                length -= count;
+                if (!chars.hasRemaining()) {
+                    encode(false);
+                }
+            }
+        }
+
+        void finish() throws IOException {
+            encode(true);
+            CoderResult result;
+            do {
+                result = encoder.flush(bytes);
+                writeBytes();
+            } while (result.isOverflow());
+        }
+
+        private void encode(boolean endOfInput) throws IOException {
+            chars.flip();
+            CoderResult result;
+            do {
+                result = encoder.encode(chars, bytes, endOfInput);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                writeBytes();
+            } while (result.isOverflow());
+            charsWritten += chars.position();
+            // a surrogate split across chunks stays in the buffer for the next round
+            chars.compact();
+            progress.accept(Math.min(charsWritten, totalChars), totalChars);
+        }
+
+        private void writeBytes() throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            bytes.clear();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // converts \r\n and lone \r to \n while counting which line ending the file mostly uses
+    private static class LineEndingNormalizer {
+        private final StringBuilder builder;
+        private boolean pendingCarriageReturn = false;
+        private long lf = 0;
+        private long crlf = 0;
+        private long cr = 0;
+
+        LineEndingNormalizer(int capacity) {
+            builder = new StringBuilder(capacity);
+        }
+
+        void append(CharBuffer buffer) {
+            buffer.flip();
+            char[] chars = buffer.array();
+            int end = buffer.arrayOffset() + buffer.limit();
+            int runStart = buffer.arrayOffset() + buffer.position();
+            for (int i = runStart; i < end; i++) {
+                char c = chars[i];
+                if (c == '\r') {
+                    builder.append(chars, runStart, i - runStart).append('\n');
+                    runStart = i + 1;
+                    if (pendingCarriageReturn) {
+                        cr++;
+                    }
+                    pendingCarriageReturn = true;
+                    continue;
+                }
+                if (c == '\n') {
+                    if (pendingCarriageReturn) {
+                        builder.append(chars, runStart, i - runStart);
+                        runStart = i + 1;
+                        crlf++;
+                    }
+                    else {
+                        lf++;
+                    }
+                }
+                else if (pendingCarriageReturn) {
+                    cr++;
+                }
+                pendingCarriageReturn = false;
+            }
+            builder.append(chars, runStart, end - runStart);
+            buffer.clear();
+        }
+
+        String lineSeparator() {
+            long lastCr = pendingCarriageReturn ? 1 : 0;
+            if (crlf > lf && crlf > cr + lastCr) {
+                return "\r\n";
+            }
+            if (cr + lastCr > lf) {
+                return "\r";
+            }
+            return "\n";
+        }
+
+        @Override
+        public String toString() {
+            return builder.toString();
+        }
+    }
+}
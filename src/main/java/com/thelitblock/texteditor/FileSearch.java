@@ -0,0 +1,425 @@
+package com.thelitblock.texteditor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// searches the text files below a folder. One thread walks the tree and hands every file to a fixed pool of workers
+// as soon as it is found, so results from the first files arrive while the walk is still going
+public class FileSearch {
+    private static final int WORKER_COUNT = Integer.getInteger("texteditor.findInFiles.threads",
+            Runtime.getRuntime().availableProcessors());
+    static final int MAX_RESULTS = Integer.getInteger("texteditor.findInFiles.maxResults", 10_000);
+    // smaller files are read into a direct buffer owned by the worker, larger ones are memory-mapped
+    private static final int MAP_THRESHOLD = 256 * 1024;
+    // a NUL byte among the first bytes marks a file as binary
+    private static final int BINARY_CHECK_LENGTH = 8192;
+    private static final int PREVIEW_LENGTH = 200;
+    // files larger than this are never decoded whole, they are searched a chunk of whole lines at a time
+    static final int CHUNK_SIZE = 16 << 20;
+    // chars of a line cut between two chunks that are searched again with the next chunk, so a match across the cut
+    // is found as long as it is not longer than this
+    private static final int CHUNK_OVERLAP = 1 << 16;
+
+    private static final ExecutorService walker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "find-in-files-walker");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // once the queue is full the walker searches files itself instead of running further ahead of the workers
+    static final ThreadPoolExecutor workers = new ThreadPoolExecutor(WORKER_COUNT, WORKER_COUNT,
+            0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(WORKER_COUNT * 64), runnable -> {
+                Thread thread = new Thread(runnable, "find-in-files");
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+    private static final ThreadLocal<ByteBuffer> readBuffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(MAP_THRESHOLD));
+    private static final ThreadLocal<CharBuffer> charBuffers = ThreadLocal.withInitial(() -> CharBuffer.allocate(MAP_THRESHOLD));
+
+    record Result(Path file, int line, int column, int length, String preview) {
+    }
+
+    // called from the walker and worker threads
+    interface Listener {
+        void onResults(List<Result> results);
+
+        // not called for a cancelled search, truncated is set when the search stopped at MAX_RESULTS
+        void onFinished(int filesSearched, boolean truncated);
+    }
+
+    private final Path root;
+    private final SearchQuery query;
+    // narrows the files to search once it is ready, may be null
+    private final TrigramIndex index;
+    private final Listener listener;
+    // the walk counts as one pending task, so the search finishes once it and every file it found are done
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private final AtomicInteger filesSearched = new AtomicInteger();
+    private final AtomicInteger resultCount = new AtomicInteger();
+    private volatile boolean cancelled = false;
+    private volatile boolean truncated = false;
+
+    FileSearch(Path root, SearchQuery query, TrigramIndex index, Listener listener) {
+        this.root = root;
+        this.query = query;
+        this.index = index;
+        this.listener = listener;
+    }
+
+    void start() {
+        walker.execute(() -> {
+            try {
+                List<Path> candidates = null;
+                if (index != null) {
+                    index.catchUp();
+                    candidates = index.findCandidates(query);
+                }
+                if (candidates == null) {
+                    walk();
+                }
+                else {
+                    for (Path file : candidates) {
+                        if (isStopped()) {
+                            break;
+                        }
+                        submit(file);
+                    }
+                }
+            }
+            catch (IOException e) {
+                System.out.println("Error searching " + root);
+            }
+            finally {
+                finishTask();
+            }
+        });
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    private boolean isStopped() {
+        return cancelled || truncated;
+    }
+
+    private void walk() throws IOException {
+        IgnoreRules.walk(root, this::isStopped, (file, attributes) -> submit(file));
+    }
+
+    private void submit(Path file) {
+        pending.incrementAndGet();
+        workers.execute(() -> {
+            try {
+                if (!isStopped()) {
+                    searchFile(file);
+                }
+            }
+            finally {
+                finishTask();
+            }
+        });
+    }
+
+    private void finishTask() {
+        if (pending.decrementAndGet() == 0 && !cancelled) {
+            listener.onFinished(filesSearched.get(), truncated);
+        }
+    }
+
+    private void searchFile(Path file) {
+        String text;
+        try {
+            if (Files.size(file) > CHUNK_SIZE) {
+                searchLargeFile(file);
+                return;
+            }
+            text = readText(file);
+        }
+        catch (IOException e) {
+            // files that vanish or cannot be read while searching are skipped
+            return;
+        }
+        filesSearched.incrementAndGet();
+        if (text != null) {
+            searchText(file, text, 0, 0, 0);
+        }
+    }
+
+    // the text of a file, or null for binary files and files larger than CHUNK_SIZE
+    static String readText(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > CHUNK_SIZE) {
+                return null;
+            }
+            ByteBuffer bytes;
+            if (size > MAP_THRESHOLD) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            else {
+                bytes = readBuffers.get().clear().limit((int) size);
+                while (bytes.hasRemaining() && channel.read(bytes) != -1) {
+                }
+                bytes.flip();
+            }
+            return decode(bytes);
+        }
+    }
+
+    // maps and decodes the file a chunk at a time, each chunk cut after its last line break, so only one chunk of text
+    // is held at once. A line longer than a chunk is searched in pieces that overlap by CHUNK_OVERLAP chars. Only
+    // files where bytes of 10 and 13 are always line breaks are searched this way, UTF-16 files this large are
+    // skipped like binary ones
+    private void searchLargeFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            int line = 0;
+            // length of the part of the current line that is in earlier chunks
+            int column = 0;
+            // end of a line that was cut, searched again at the start of the next chunk
+            String overlap = "";
+            Charset charset = StandardCharsets.UTF_8;
+            while (position < size && !isStopped()) {
+                long length = Math.min(CHUNK_SIZE, size - position);
+                ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                if (position == 0) {
+                    if (isUtf16(bytes) || isBinary(bytes)) {
+                        break;
+                    }
+                    if (hasUtf8Bom(bytes)) {
+                        bytes.position(3);
+                    }
+                }
+                int end = position + bytes.limit() == size ? bytes.limit() : chunkEnd(bytes);
+                bytes.limit(end);
+                String text;
+                try {
+                    text = decode(bytes.slice(), charset);
+                }
+                catch (CharacterCodingException e) {
+                    // the rest of the file is read like FileOperations.readFile reads a file that is not UTF-8
+                    charset = FileOperations.FALLBACK_CHARSET;
+                    text = decode(bytes.slice(), charset);
+                }
+                int lines = countLines(text);
+                if (lines > 0) {
+                    // the chunk ends with a line break or with the file, no line was cut
+                    searchText(file, overlap + text, line, column - overlap.length(), overlap.length());
+                    overlap = "";
+                    column = 0;
+                }
+                else {
+                    text = overlap + text;
+                    searchText(file, text, line, column - overlap.length(), overlap.length());
+                    column += text.length() - overlap.length();
+                    int overlapStart = Math.max(0, text.length() - CHUNK_OVERLAP);
+                    if (overlapStart > 0 && Character.isLowSurrogate(text.charAt(overlapStart))) {
+                        overlapStart--;
+                    }
+                    overlap = text.substring(overlapStart);
+                }
+                line += lines;
+                position += end;
+            }
+        }
+        filesSearched.incrementAndGet();
+    }
+
+    // end of the last whole line in bytes, or of the last whole UTF-8 character when no line ends in it. A \r at the
+    // very end may be followed by a \n in the next chunk, so it is not taken as a line break
+    private static int chunkEnd(ByteBuffer bytes) {
+        for (int i = bytes.limit() - 1; i >= bytes.position(); i--) {
+            byte b = bytes.get(i);
+            if (b == '\n' || b == '\r' && i + 1 < bytes.limit() && bytes.get(i + 1) != '\n') {
+                return i + 1;
+            }
+        }
+        int end = bytes.limit();
+        while (end > bytes.position() && (bytes.get(end - 1) & 0xC0) == 0x80) {
+            end--;
+        }
+        // the lead byte of the character that was cut off
+        if (end > bytes.position() && (bytes.get(end - 1) & 0x80) != 0) {
+            end--;
+        }
+        // nothing but continuation bytes is not UTF-8, the chunk is decoded whole with the fallback charset
+        return end > bytes.position() ? end : bytes.limit();
+    }
+
+    // line breaks in text, counted like FileOperations.readFile counts them: \r\n, a lone \r and \n are one each
+    private static int countLines(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r' && (i + 1 == text.length() || text.charAt(i + 1) != '\n')) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean hasUtf8Bom(ByteBuffer bytes) {
+        return bytes.limit() >= 3 && (bytes.get(0) & 0xFF) == 0xEF && (bytes.get(1) & 0xFF) == 0xBB
+                && (bytes.get(2) & 0xFF) == 0xBF;
+    }
+
+    private static boolean isUtf16(ByteBuffer bytes) {
+        return bytes.limit() >= 2 && ((bytes.get(0) & 0xFF) == 0xFE && (bytes.get(1) & 0xFF) == 0xFF
+                || (bytes.get(0) & 0xFF) == 0xFF && (bytes.get(1) & 0xFF) == 0xFE);
+    }
+
+    private static boolean isBinary(ByteBuffer bytes) {
+        for (int i = 0; i < Math.min(bytes.limit(), BINARY_CHECK_LENGTH); i++) {
+            if (bytes.get(i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // the text of a file with the same charset detection as FileOperations.readFile, or null for binary files
+    private static String decode(ByteBuffer bytes) throws CharacterCodingException {
+        int limit = bytes.limit();
+        if (hasUtf8Bom(bytes)) {
+            return decode(bytes.position(3), StandardCharsets.UTF_8);
+        }
+        if (limit >= 2 && (bytes.get(0) & 0xFF) == 0xFE && (bytes.get(1) & 0xFF) == 0xFF) {
+            return decode(bytes.position(2), StandardCharsets.UTF_16BE);
+        }
+        if (limit >= 2 && (bytes.get(0) & 0xFF) == 0xFF && (bytes.get(1) & 0xFF) == 0xFE) {
+            return decode(bytes.position(2), StandardCharsets.UTF_16LE);
+        }
+        if (isBinary(bytes)) {
+            return null;
+        }
+        try {
+            return decode(bytes, StandardCharsets.UTF_8);
+        }
+        catch (CharacterCodingException e) {
+            return decode(bytes.position(0), FileOperations.FALLBACK_CHARSET);
+        }
+    }
+
+    private static String decode(ByteBuffer bytes, Charset charset) throws CharacterCodingException {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        CharBuffer chars = charBuffers.get();
+        if (chars.capacity() < bytes.remaining()) {
+            chars = CharBuffer.allocate(bytes.remaining());
+            if (bytes.remaining() <= MAP_THRESHOLD * 16) {
+                charBuffers.set(chars);
+            }
+        }
+        chars.clear();
+        CoderResult result = decoder.decode(bytes, chars, true);
+        if (result.isError()) {
+            result.throwException();
+        }
+        decoder.flush(chars);
+        return chars.flip().toString();
+    }
+
+    // text starts at column firstColumn of line firstLine of the file. Matches within its first skip chars were found
+    // with the chunk before and are left out
+    private void searchText(Path file, String text, int firstLine, int firstColumn, int skip) {
+        SearchMatches matches = new SearchMatches(query);
+        if (query.isRegex()) {
+            int lineStart = 0;
+            while (lineStart <= text.length()) {
+                int lineEnd = lineEnd(text, lineStart);
+                query.findAll(text.substring(lineStart, lineEnd), lineStart, matches);
+                lineStart = nextLine(text, lineEnd);
+            }
+        }
+        else {
+            // a literal query has no line breaks and treats them as word boundaries, so the whole text can be
+            // scanned at once
+            query.findAll(text, 0, matches);
+        }
+        if (matches.isEmpty()) {
+            return;
+        }
+
+        List<Result> results = new ArrayList<>();
+        int line = firstLine;
+        int lineStart = 0;
+        int lineEnd = lineEnd(text, 0);
+        for (int i = 0; i < matches.size(); i++) {
+            int start = matches.getStart(i);
+            while (start > lineEnd) {
+                line++;
+                lineStart = nextLine(text, lineEnd);
+                lineEnd = lineEnd(text, lineStart);
+            }
+            if (matches.getEnd(i) <= skip) {
+                continue;
+            }
+            int length = Math.min(matches.getEnd(i), lineEnd) - start;
+            int column = start - lineStart + (line == firstLine ? firstColumn : 0);
+            results.add(new Result(file, line, column, length, preview(text, lineStart, lineEnd, start)));
+        }
+
+        int total = resultCount.addAndGet(results.size());
+        if (total >= MAX_RESULTS) {
+            truncated = true;
+            results = results.subList(0, Math.max(0, results.size() - (total - MAX_RESULTS)));
+        }
+        if (!cancelled && !results.isEmpty()) {
+            listener.onResults(results);
+        }
+    }
+
+    // end of the line starting at lineStart, lines end at \n, \r\n or a lone \r like in the editor
+    private static int lineEnd(String text, int lineStart) {
+        for (int i = lineStart; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c <= '\r' && (c == '\n' || c == '\r')) {
+                return i;
+            }
+        }
+        return text.length();
+    }
+
+    private static int nextLine(String text, int lineEnd) {
+        if (lineEnd == text.length()) {
+            return text.length() + 1;
+        }
+        boolean crlf = text.charAt(lineEnd) == '\r' && lineEnd + 1 < text.length() && text.charAt(lineEnd + 1) == '\n';
+        return crlf ? lineEnd + 2 : lineEnd + 1;
+    }
+
+    private static String preview(String text, int lineStart, int lineEnd, int matchStart) {
+        int from = lineStart;
+        while (from < lineEnd && Character.isWhitespace(text.charAt(from))) {
+            from++;
+        }
+        if (lineEnd - from <= PREVIEW_LENGTH) {
+            return text.substring(from, lineEnd);
+        }
+        // long lines are cut to a window that starts a little before the match
+        from = Math.max(from, Math.min(matchStart - PREVIEW_LENGTH / 4, lineEnd - PREVIEW_LENGTH));
+        return text.substring(from, from + PREVIEW_LENGTH);
+    }
+}
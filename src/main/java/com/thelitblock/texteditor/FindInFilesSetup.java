@@ -0,0 +1,201 @@
+package com.thelitblock.texteditor;
+
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.*;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.PatternSyntaxException;
+
+public class FindInFilesSetup {
+    private final VBox panel = new VBox();
+    private final TextField searchText = new TextField();
+    private final ToggleButton matchCaseButton = new ToggleButton("Aa");
+    private final ToggleButton wholeWordButton = new ToggleButton("W");
+    private final ToggleButton regexButton = new ToggleButton(".*");
+    private final Label status = new Label();
+    private final ListView<FileSearch.Result> resultList = new ListView<>();
+    private final FolderSetup folderSetup;
+    private FileSearch search;
+    // bumped for every search so results of a cancelled one that are still queued get dropped
+    private int generation = 0;
+    private long searchStart;
+
+    public FindInFilesSetup(FolderSetup folderSetup) {
+        this.folderSetup = folderSetup;
+        setupPanel();
+    }
+
+    VBox getPanel() {
+        return panel;
+    }
+
+    private void setupPanel() {
+        searchText.setPromptText("Find in Files");
+        matchCaseButton.setSelected(true);
+        matchCaseButton.setTooltip(new Tooltip("Match case"));
+        wholeWordButton.setTooltip(new Tooltip("Whole word"));
+        regexButton.setTooltip(new Tooltip("Regular expression"));
+
+        // every key press would walk the whole folder, so searches only start on enter
+        searchText.setOnAction(event -> startSearch());
+        matchCaseButton.selectedProperty().addListener((obs, oldValue, newValue) -> startSearch());
+        wholeWordButton.selectedProperty().addListener((obs, oldValue, newValue) -> startSearch());
+        regexButton.selectedProperty().addListener((obs, oldValue, newValue) -> startSearch());
+
+        resultList.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(FileSearch.Result item, boolean empty) {
+                super.updateItem(item, empty);
+                if (empty || item == null) {
+                    setText(null);
+                    setTooltip(null);
+                }
+                else {
+                    setText(item.file().getFileName() + ":" + (item.line() + 1) + "  " + item.preview());
+                    setTooltip(new Tooltip(item.file().toString()));
+                }
+            }
+        });
+        resultList.setOnMouseClicked(event -> {
+            if (event.getButton() == MouseButton.PRIMARY && event.getClickCount() == 2) {
+                openSelectedResult();
+            }
+        });
+        resultList.setOnKeyPressed(event -> {
+            if (event.getCode() == KeyCode.ENTER) {
+                openSelectedResult();
+            }
+        });
+
+        HBox searchRow = new HBox(searchText, matchCaseButton, wholeWordButton, regexButton);
+        searchRow.setSpacing(5);
+        searchRow.setAlignment(Pos.CENTER_LEFT);
+        HBox.setHgrow(searchText, Priority.ALWAYS);
+
+        panel.getChildren().addAll(searchRow, status, resultList);
+        panel.setSpacing(5);
+        panel.setPadding(new Insets(5));
+        panel.setPrefWidth(350);
+        VBox.setVgrow(resultList, Priority.ALWAYS);
+        panel.setManaged(false);
+        panel.setVisible(false);
+
+        panel.setId("findInFilesPanel");
+        status.setId("findInFilesStatus");
+    }
+
+    void showPanel() {
+        panel.setManaged(true);
+        panel.setVisible(true);
+        searchText.requestFocus();
+        searchText.selectAll();
+    }
+
+    void hidePanel() {
+        cancelSearch();
+        panel.setManaged(false);
+        panel.setVisible(false);
+    }
+
+    boolean isShowing() {
+        return panel.isVisible();
+    }
+
+    private void startSearch() {
+        cancelSearch();
+        generation++;
+        resultList.getItems().clear();
+        status.setText("");
+
+        File root = folderSetup.getRootDirectory();
+        String query = searchText.getText();
+        if (query.isEmpty()) {
+            return;
+        }
+        if (root == null) {
+            status.setText("Open a folder to search in");
+            return;
+        }
+        SearchQuery searchQuery;
+        try {
+            searchQuery = new SearchQuery(query, matchCaseButton.isSelected(), wholeWordButton.isSelected(),
+                    regexButton.isSelected());
+        }
+        catch (PatternSyntaxException e) {
+            status.setText("Invalid regex");
+            return;
+        }
+
+        status.setText("Searching...");
+        searchStart = System.nanoTime();
+        search = new FileSearch(root.toPath(), searchQuery, folderSetup.getIndex(), new ResultStream());
+        search.start();
+    }
+
+    private void cancelSearch() {
+        if (search != null) {
+            search.cancel();
+            search = null;
+        }
+    }
+
+    private void openSelectedResult() {
+        FileSearch.Result result = resultList.getSelectionModel().getSelectedItem();
+        if (result != null) {
+            TextEditor.openFileAt(result.file().toFile(), result.line(), result.column(), result.length());
+        }
+    }
+
+    // hands results from the search threads to the list in batches, at most one pulse of the FX thread apart
+    private class ResultStream implements FileSearch.Listener {
+        private final ConcurrentLinkedQueue<FileSearch.Result> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+        private final int owner = generation;
+
+        @Override
+        public void onResults(List<FileSearch.Result> results) {
+            queue.addAll(results);
+            if (flushScheduled.compareAndSet(false, true)) {
+                Platform.runLater(this::flush);
+            }
+        }
+
+        @Override
+        public void onFinished(int filesSearched, boolean truncated) {
+            Platform.runLater(() -> {
+                flush();
+                if (generation != owner) {
+                    return;
+                }
+                long millis = (System.nanoTime() - searchStart) / 1_000_000;
+                status.setText(resultList.getItems().size() + (truncated ? "+" : "") + " results in "
+                        + filesSearched + " files (" + millis + " ms)");
+                search = null;
+            });
+        }
+
+        private void flush() {
+            flushScheduled.set(false);
+            List<FileSearch.Result> batch = new ArrayList<>();
+            FileSearch.Result result;
+            while ((result = queue.poll()) != null) {
+                batch.add(result);
+            }
+            if (generation == owner && !batch.isEmpty()) {
+                resultList.getItems().addAll(batch);
+                status.setText("Searching... " + resultList.getItems().size() + " results");
+            }
+        }
+    }
+}
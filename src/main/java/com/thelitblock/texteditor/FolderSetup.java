@@ -1,15 +1,16 @@
 package com.thelitblock.texteditor;
 
 import javafx.scene.control.*;
-import javafx.scene.layout.HBox;
-import javafx.stage.DirectoryChooser;
 
 import java.io.File;
-import java.util.Objects;
+import java.nio.file.Path;
 
 public class FolderSetup {
     private TreeView<String> folderTreeView;
     private TreeItem<String> rootItem;
+    private File rootDirectory;
+    private TrigramIndex index;
+    private final FolderWatcher watcher = new FolderWatcher(this::applyChanges);
     private static final String FOLDER_ICON = "\uD83D\uDCC1"; // 📁
     private static final String FILE_ICON = "\uD83D\uDCC4"; // 📄
     private static final String JAVA_ICON = "☕";
@@ -22,15 +23,11 @@ public class FolderSetup {
     private static final String JSON_ICON = "{}";
     private static final String XML_ICON = "</>";
 
-    public FolderSetup(HBox searchBar, TreeView<String> folderTreeView, TreeItem<String> rootItem) {
+    public FolderSetup(TreeView<String> folderTreeView, TreeItem<String> rootItem) {
         this.folderTreeView = folderTreeView;
         this.rootItem = rootItem;
         folderTreeView.setShowRoot(false);
 
-        Button openDirButton = new Button("Open Folder");
-        openDirButton.setOnAction(e -> openFolder());
-        searchBar.getChildren().add(openDirButton);
-
         setupTreeViewCellFactory();
     }
 
@@ -38,6 +35,18 @@ public class FolderSetup {
         return folderTreeView;
     }
 
+    File getRootDirectory() {
+        return rootDirectory;
+    }
+
+    TrigramIndex getIndex() {
+        return index;
+    }
+
+    FolderWatcher getWatcher() {
+        return watcher;
+    }
+
     private void setupTreeViewCellFactory() {
         folderTreeView.setCellFactory(tv -> new TreeCell<String>() {
             @Override
@@ -48,15 +57,14 @@ public class FolderSetup {
                     setGraphic(null);
                 }
                 else {
-                    TreeItem<String> treeItem = getTreeItem();
-                    if (treeItem != null && treeItem.getGraphic() != null) {
-                        File file = (File) treeItem.getGraphic().getUserData();
-                        if (file.isDirectory()) {
+                    // placeholders of folders that are still being listed are plain tree items
+                    if (getTreeItem() instanceof FolderTreeItem treeItem) {
+                        if (treeItem.isDirectory()) {
                             setText(FOLDER_ICON + " " + item);
                             setStyle("-fx-text-fill: #c678dd;");
                         }
                         else {
-                            String icon = getFileIcon(file.getName());
+                            String icon = getFileIcon(item);
                             setText(icon + " " + item);
                             setStyle("-fx-text-fill: #61afef;");
                         }
@@ -103,42 +111,67 @@ public class FolderSetup {
 
     public void setupFolderTreeView() {
         folderTreeView.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) -> {
-            if (newValue != null) {
-                TreeItem<String> selectedItem = newValue;
-                File file = (File) selectedItem.getGraphic().getUserData();
-                if (file.isFile()) {
-                    TextEditor.openFileInNewTab(file);
-                }
+            if (newValue instanceof FolderTreeItem selectedItem && !selectedItem.isDirectory()) {
+                TextEditor.openFileInNewTab(selectedItem.getPath().toFile());
             }
         });
     }
 
-    public void createTree(File directory, TreeItem<String> parent) {
-        for (File file : Objects.requireNonNull(directory.listFiles())) {
-            TreeItem<String> item = new TreeItem<>(file.getName());
-            parent.getChildren().add(item);
-
-            Label label = new Label(file.getName());
-            label.setUserData(file);
-            item.setGraphic(label);
+    void openFolder(File directory) {
+        rootDirectory = directory;
+        if (index != null) {
+            index.close();
+        }
+        // the new index starts watching folders as soon as it is opened
+        watcher.unwatchAll();
+        index = TrigramIndex.open(directory.toPath(), watcher);
+        TextEditor.watchOpenFiles();
+        // only the top level is listed now, every folder below it is listed when it is first expanded
+        FolderTreeItem folderItem = new FolderTreeItem(directory.toPath().toAbsolutePath().normalize(), true, watcher);
+        folderItem.setExpanded(true);
+        rootItem = folderItem;
+        folderTreeView.setRoot(rootItem);
+    }
 
-            if (file.isDirectory()) {
-                createTree(file, item);
+    // lists the changed folders of the tree again, updates the index and the tabs of changed files
+    private void applyChanges(FolderWatcher.Changes changes) {
+        if (rootItem instanceof FolderTreeItem root) {
+            for (Path directory : changes.directories()) {
+                FolderTreeItem item = findItem(root, directory);
+                if (item != null && item.isLoaded()) {
+                    item.loadChildren();
+                }
             }
         }
+        if (index != null) {
+            index.filesChanged(changes.files());
+            index.filesChanged(changes.overflowed());
+        }
+        TextEditor.reloadChangedFiles(changes);
     }
 
-    private void openFolder() {
-        DirectoryChooser directoryChooser = new DirectoryChooser();
-        File selectedDirectory = directoryChooser.showDialog(TextEditor.getPrimaryStage());
-
-        if (selectedDirectory != null) {
-            rootItem.getChildren().clear();
-            Label rootLabel = new Label(selectedDirectory.getName());
-            rootLabel.setUserData(selectedDirectory);
-            rootItem.setGraphic(rootLabel);
-            createTree(selectedDirectory, rootItem);
-            folderTreeView.setRoot(rootItem);
+    // the item of path if every folder on the way to it has been listed
+    private FolderTreeItem findItem(FolderTreeItem root, Path path) {
+        if (path.equals(root.getPath())) {
+            return root;
+        }
+        if (!path.startsWith(root.getPath())) {
+            return null;
+        }
+        FolderTreeItem item = root;
+        for (Path name : root.getPath().relativize(path)) {
+            FolderTreeItem next = null;
+            for (TreeItem<String> child : item.getChildren()) {
+                if (child instanceof FolderTreeItem childItem && childItem.getPath().getFileName().equals(name)) {
+                    next = childItem;
+                    break;
+                }
+            }
+            if (next == null) {
+                return null;
+            }
+            item = next;
         }
+        return item;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,131 @@
+package com.thelitblock.texteditor;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.scene.control.TreeItem;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// a file or folder of the folder tree. Folders list their children on a background thread the first time they are
+// expanded and show a placeholder until the listing is done
+public class FolderTreeItem extends TreeItem<String> {
+    static final String LOADING_TEXT = "Loading...";
+    // children added per pulse, so a folder with tens of thousands of entries never stalls the FX thread
+    private static final int INSERT_BATCH = 1000;
+    private static final Comparator<FolderTreeItem> ORDER = Comparator
+            .comparing((FolderTreeItem item) -> !item.isDirectory())
+            .thenComparing(TreeItem::getValue, String.CASE_INSENSITIVE_ORDER);
+
+    private final Path path;
+    private final boolean directory;
+    // watches every folder once it is listed, so its children can be listed again when they change
+    private final FolderWatcher watcher;
+    private boolean loaded = false;
+    // bumped by every listing so batches of an outdated one stop being inserted
+    private int generation = 0;
+
+    FolderTreeItem(Path path, boolean directory, FolderWatcher watcher) {
+        super(path.getFileName() == null ? path.toString() : path.getFileName().toString());
+        this.path = path;
+        this.directory = directory;
+        this.watcher = watcher;
+        if (directory) {
+            expandedProperty().addListener((obs, wasExpanded, expanded) -> {
+                if (expanded && !loaded) {
+                    loadChildren();
+                }
+            });
+        }
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    boolean isDirectory() {
+        return directory;
+    }
+
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    @Override
+    public boolean isLeaf() {
+        return !directory;
+    }
+
+    // lists the folder again, only folders that were expanded once have children to update
+    void loadChildren() {
+        loaded = true;
+        int listing = ++generation;
+        watcher.watch(path);
+        if (getChildren().isEmpty()) {
+            getChildren().add(new TreeItem<>(LOADING_TEXT));
+        }
+
+        Task<List<FolderTreeItem>> task = new Task<>() {
+            @Override
+            protected List<FolderTreeItem> call() throws IOException {
+                List<FolderTreeItem> children = new ArrayList<>();
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+                    for (Path entry : entries) {
+                        children.add(new FolderTreeItem(entry, Files.isDirectory(entry), watcher));
+                    }
+                }
+                children.sort(ORDER);
+                return children;
+            }
+        };
+        task.setOnSucceeded(event -> {
+            if (listing == generation) {
+                insertChildren(task.getValue(), 0, listing);
+            }
+        });
+        task.setOnFailed(event -> {
+            System.out.println("Error reading folder " + path);
+            if (listing == generation) {
+                loaded = false;
+                getChildren().clear();
+            }
+        });
+        FileOperations.ioExecutor.execute(task);
+    }
+
+    private void insertChildren(List<FolderTreeItem> children, int from, int listing) {
+        if (listing != generation) {
+            return;
+        }
+        int to = Math.min(from + INSERT_BATCH, children.size());
+        if (from == 0) {
+            // entries that were listed before keep their item, so expanded folders stay expanded with their children
+            Map<Path, FolderTreeItem> previous = new HashMap<>();
+            for (TreeItem<String> child : getChildren()) {
+                if (child instanceof FolderTreeItem item) {
+                    previous.put(item.getPath(), item);
+                }
+            }
+            for (int i = 0; i < children.size(); i++) {
+                FolderTreeItem item = previous.get(children.get(i).getPath());
+                if (item != null && item.isDirectory() == children.get(i).isDirectory()) {
+                    children.set(i, item);
+                }
+            }
+            getChildren().setAll(children.subList(0, to));
+        }
+        else {
+            getChildren().addAll(children.subList(from, to));
+        }
+        if (to < children.size()) {
+            Platform.runLater(() -> insertChildren(children, to, listing));
+        }
+    }
+}
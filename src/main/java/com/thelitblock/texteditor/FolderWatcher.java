@@ -0,0 +1,149 @@
+package com.thelitblock.texteditor;
+
+import javafx.application.Platform;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+// watches folders for entries that are created, written or deleted outside the editor. Events are collected on a
+// background thread until the folders are quiet for a moment and then handed to the FX thread as one batch, so a
+// checkout touching thousands of files turns into a handful of updates
+public class FolderWatcher {
+    // a batch is sent once no event came for QUIET_MILLIS, and at the latest MAX_DELAY_MILLIS after its first event
+    private static final long QUIET_MILLIS = 100;
+    private static final long MAX_DELAY_MILLIS = 500;
+
+    // directories lost or gained entries and need to be listed again, files are every path that changed. Overflowed
+    // directories had more events than the system could queue, anything in them may have changed
+    record Changes(Set<Path> directories, Set<Path> files, Set<Path> overflowed) {
+    }
+
+    private final Consumer<Changes> listener;
+    private final Map<Path, WatchKey> keys = new ConcurrentHashMap<>();
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private volatile WatchService watchService;
+    private volatile boolean failed = false;
+
+    FolderWatcher(Consumer<Changes> listener) {
+        this.listener = listener;
+    }
+
+    // starts watching directory, watching the same directory again does nothing. Returns false when the directory
+    // could not be watched, for one when the system ran out of watches. Called on the FX thread and the indexer thread
+    boolean watch(Path directory) {
+        Path path = directory.toAbsolutePath().normalize();
+        if (keys.containsKey(path)) {
+            return true;
+        }
+        if (!start()) {
+            return false;
+        }
+        try {
+            WatchKey key = path.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            keys.put(path, key);
+            watchedDirectories.put(key, path);
+            return true;
+        }
+        catch (IOException e) {
+            // once the system is out of watches every folder fails, one line is enough
+            if (!failed) {
+                failed = true;
+                System.out.println("Error watching " + path + ": " + e.getMessage());
+            }
+            return false;
+        }
+    }
+
+    void unwatchAll() {
+        for (WatchKey key : keys.values()) {
+            key.cancel();
+        }
+        keys.clear();
+        watchedDirectories.clear();
+        failed = false;
+    }
+
+    // the watch service and its thread are only created once the first folder is watched
+    private synchronized boolean start() {
+        if (watchService != null) {
+            return true;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        }
+        catch (IOException e) {
+            System.out.println("Error starting the folder watcher");
+            return false;
+        }
+        Thread thread = new Thread(this::run, "folder-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                Changes changes = new Changes(new HashSet<>(), new HashSet<>(), new HashSet<>());
+                collect(watchService.take(), changes);
+                long deadline = System.currentTimeMillis() + MAX_DELAY_MILLIS;
+                long remaining;
+                while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+                    WatchKey key = watchService.poll(Math.min(QUIET_MILLIS, remaining), TimeUnit.MILLISECONDS);
+                    if (key == null) {
+                        break;
+                    }
+                    collect(key, changes);
+                }
+                if (!changes.files().isEmpty() || !changes.overflowed().isEmpty()) {
+                    Platform.runLater(() -> listener.accept(changes));
+                }
+            }
+        }
+        catch (InterruptedException | ClosedWatchServiceException e) {
+            // the watcher only stops with the application
+        }
+    }
+
+    private void collect(WatchKey key, Changes changes) {
+        Path directory = watchedDirectories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            // events still queued for a directory that was unwatched are dropped
+            if (directory == null) {
+                continue;
+            }
+            if (event.kind() == OVERFLOW) {
+                changes.directories().add(directory);
+                changes.overflowed().add(directory);
+                continue;
+            }
+            changes.files().add(directory.resolve((Path) event.context()));
+            if (event.kind() != ENTRY_MODIFY) {
+                changes.directories().add(directory);
+            }
+        }
+        // the key is no longer valid once its directory is deleted
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+            if (directory != null) {
+                keys.remove(directory, key);
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.thelitblock.texteditor;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+// .gitignore style patterns of one folder, chained to the rules of the folders above it. Supports negation, trailing
+// slashes for folders and patterns anchored by a slash, which covers what most ignore files use
+public class IgnoreRules {
+    static final String IGNORE_FILE = ".gitignore";
+    // version control folders are never searched, extra patterns can be passed as a comma separated list
+    private static final String[] DEFAULT_PATTERNS = {".git/", ".hg/", ".svn/"};
+    private static final String EXTRA_PATTERNS = System.getProperty("texteditor.ignore", "");
+
+    private final IgnoreRules parent;
+    private final Path base;
+    private final List<Rule> rules;
+
+    private record Rule(PathMatcher matcher, boolean anchored, boolean directoryOnly, boolean negated) {
+    }
+
+    private IgnoreRules(IgnoreRules parent, Path base, List<Rule> rules) {
+        this.parent = parent;
+        this.base = base;
+        this.rules = rules;
+    }
+
+    static IgnoreRules forRoot(Path root) {
+        List<Rule> rules = new ArrayList<>();
+        for (String pattern : DEFAULT_PATTERNS) {
+            addRule(rules, pattern);
+        }
+        for (String pattern : EXTRA_PATTERNS.split(",")) {
+            addRule(rules, pattern);
+        }
+        return new IgnoreRules(null, root, rules).forDirectory(root);
+    }
+
+    // visits the regular files below root that are not ignored, until stopped returns true
+    static void walk(Path root, BooleanSupplier stopped, BiConsumer<Path, BasicFileAttributes> visitor) throws IOException {
+        walk(root, forRoot(root), stopped, visitor);
+    }
+
+    // same as above for a folder below the root, with the rules that apply inside it
+    static void walk(Path root, IgnoreRules rules, BooleanSupplier stopped, BiConsumer<Path, BasicFileAttributes> visitor)
+            throws IOException {
+        walk(root, rules, stopped, directory -> {
+        }, visitor);
+    }
+
+    // same as above, and passes root and every folder below it that is not ignored to directoryVisitor before the
+    // folder is listed
+    static void walk(Path root, IgnoreRules rules, BooleanSupplier stopped, Consumer<Path> directoryVisitor,
+            BiConsumer<Path, BasicFileAttributes> visitor) throws IOException {
+        Deque<IgnoreRules> ignoreRules = new ArrayDeque<>();
+        ignoreRules.push(rules);
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                if (stopped.getAsBoolean()) {
+                    return FileVisitResult.TERMINATE;
+                }
+                if (directory.equals(root)) {
+                    directoryVisitor.accept(directory);
+                    return FileVisitResult.CONTINUE;
+                }
+                if (ignoreRules.peek().isIgnored(directory, true)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                directoryVisitor.accept(directory);
+                ignoreRules.push(ignoreRules.peek().forDirectory(directory));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (stopped.getAsBoolean()) {
+                    return FileVisitResult.TERMINATE;
+                }
+                if (attributes.isRegularFile() && !ignoreRules.peek().isIgnored(file, false)) {
+                    visitor.accept(file, attributes);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                // unreadable entries are skipped
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException e) {
+                if (!directory.equals(root)) {
+                    ignoreRules.pop();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    // the rules that apply inside directory, which is root or below it, or null when directory itself is ignored.
+    // Rules found on the way are kept in cache, so looking up many files of the same folders reads each ignore file once
+    static IgnoreRules forPath(Path root, Path directory, Map<Path, IgnoreRules> cache) {
+        if (cache.containsKey(directory)) {
+            return cache.get(directory);
+        }
+        IgnoreRules rules;
+        if (directory.equals(root)) {
+            rules = forRoot(root);
+        }
+        else {
+            IgnoreRules parentRules = forPath(root, directory.getParent(), cache);
+            rules = parentRules == null || parentRules.isIgnored(directory, true) ? null : parentRules.forDirectory(directory);
+        }
+        cache.put(directory, rules);
+        return rules;
+    }
+
+    // the rules that apply inside directory, which must be below the base of these rules or be the base itself
+    IgnoreRules forDirectory(Path directory) {
+        Path ignoreFile = directory.resolve(IGNORE_FILE);
+        if (!Files.isRegularFile(ignoreFile)) {
+            return this;
+        }
+        List<Rule> rules = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(ignoreFile)) {
+                addRule(rules, line);
+            }
+        }
+        catch (IOException e) {
+            System.out.println("Error reading " + ignoreFile);
+        }
+        return rules.isEmpty() ? this : new IgnoreRules(this, directory, rules);
+    }
+
+    boolean isIgnored(Path path, boolean directory) {
+        boolean ignored = parent != null && parent.isIgnored(path, directory);
+        Path relative = base.relativize(path);
+        for (Rule rule : rules) {
+            if (rule.directoryOnly() && !directory) {
+                continue;
+            }
+            if (rule.matcher().matches(rule.anchored() ? relative : path.getFileName())) {
+                ignored = !rule.negated();
+            }
+        }
+        return ignored;
+    }
+
+    private static void addRule(List<Rule> rules, String line) {
+        String pattern = line.strip();
+        if (pattern.isEmpty() || pattern.startsWith("#")) {
+            return;
+        }
+        boolean negated = pattern.startsWith("!");
+        if (negated) {
+            pattern = pattern.substring(1);
+        }
+        boolean directoryOnly = pattern.endsWith("/");
+        if (directoryOnly) {
+            pattern = pattern.substring(0, pattern.length() - 1);
+        }
+        if (pattern.startsWith("**/") && pattern.indexOf('/', 3) == -1) {
+            pattern = pattern.substring(3);
+        }
+        boolean anchored = pattern.contains("/");
+        if (pattern.startsWith("/")) {
+            pattern = pattern.substring(1);
+        }
+        if (pattern.isEmpty()) {
+            return;
+        }
+        try {
+            rules.add(new Rule(FileSystems.getDefault().getPathMatcher("glob:" + pattern), anchored, directoryOnly, negated));
+        }
+        catch (IllegalArgumentException e) {
+            // not a valid glob, git would not match anything with it either
+        }
+    }
+}
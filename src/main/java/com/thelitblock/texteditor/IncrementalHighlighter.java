@@ -0,0 +1,318 @@
+package com.thelitblock.texteditor;
+
+import javafx.concurrent.Task;
+import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.model.PlainTextChange;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.fxmisc.richtext.model.TwoDimensional.Bias;
+import org.reactfx.EventStream;
+import org.reactfx.EventStreams;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.thelitblock.texteditor.SyntaxHighlighting.*;
+
+public class IncrementalHighlighter {
+    private static final Duration HIGHLIGHT_DELAY = Duration.ofMillis(30);
+    // documents longer than this many characters only get their visible paragraphs highlighted
+    static final int VIEWPORT_MODE_THRESHOLD = Integer.getInteger("texteditor.highlight.viewportThreshold", 1_000_000);
+    // paragraphs highlighted above and below the visible ones in viewport mode
+    static final int VIEWPORT_MARGIN = Integer.getInteger("texteditor.highlight.viewportMargin", 100);
+    // cached states handed to a task past the damaged paragraphs, a change whose effect reaches further is re-lexed to
+    // the end of the request
+    private static final int CONVERGENCE_WINDOW = 4096;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "syntax-highlighter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final CodeArea codeArea;
+    // lexer state at the end of each paragraph, the first paragraphCount entries are used
+    private int[] paragraphStates;
+    private int paragraphCount;
+    // every paragraph from here on counts as unknown whatever its entry says, so a change to the state leaving a
+    // paragraph does not have to reset all the ones below it
+    private int unknownFrom;
+    private long version = 0;
+    private int dirtyFrom = -1;
+    private int dirtyTo = -1;
+    private boolean viewportMode = false;
+    // search highlights laid over every batch of spans so re-lexing does not wipe them
+    private SearchMatches searchMatches;
+    // what isUpToDate found, null once the text, the visible paragraphs or the highlighting changed since
+    private Boolean upToDate;
+
+    IncrementalHighlighter(CodeArea codeArea) {
+        this.codeArea = codeArea;
+        paragraphCount = codeArea.getParagraphs().size();
+        paragraphStates = new int[paragraphCount];
+        unknownFrom = 0;
+        dirtyFrom = 0;
+        dirtyTo = paragraphCount - 1;
+
+        EventStream<?> triggers = EventStreams.merge(
+                codeArea.multiPlainChanges(),
+                codeArea.getVisibleParagraphs().changes());
+        codeArea.multiPlainChanges().subscribe(this::onTextChanges);
+        codeArea.getVisibleParagraphs().changes().subscribe(change -> upToDate = null);
+        triggers
+            .successionEnds(HIGHLIGHT_DELAY)
+            .filterMap(event -> createRequest())
+            .mapToTask(this::highlightAsync)
+            .awaitLatest(triggers)
+            .filterMap(result -> {
+                if (result.isSuccess()) {
+                    return Optional.ofNullable(result.get());
+                }
+                result.getFailure().printStackTrace();
+                return Optional.empty();
+            })
+            .subscribe(this::applyHighlighting);
+    }
+
+    boolean isViewportMode() {
+        return viewportMode;
+    }
+
+    void setSearchMatches(SearchMatches searchMatches) {
+        this.searchMatches = searchMatches;
+    }
+
+    // whether the text as it is now is highlighted, in viewport mode only the paragraphs around the visible ones
+    boolean isUpToDate() {
+        if (upToDate == null) {
+            upToDate = createRequest().isEmpty();
+        }
+        return upToDate;
+    }
+
+    // a batch is only reported once all of it is applied, and each change is relative to the text left by the ones
+    // before it, so the paragraphs of a single change cannot be looked up. A batch is treated as one change spanning
+    // from its first to its last modified offset instead
+    private void onTextChanges(List<PlainTextChange> changes) {
+        upToDate = null;
+        if (changes.size() == 1) {
+            onTextChange(changes.getFirst().getPosition(), changes.getFirst().getInsertionEnd());
+            return;
+        }
+        int position = Integer.MAX_VALUE;
+        int unchangedSuffix = Integer.MAX_VALUE;
+        // length of the text right after each change, walked back from the final length
+        int length = codeArea.getLength();
+        for (int i = changes.size() - 1; i >= 0; i--) {
+            PlainTextChange change = changes.get(i);
+            position = Math.min(position, change.getPosition());
+            unchangedSuffix = Math.min(unchangedSuffix, length - change.getInsertionEnd());
+            length -= change.getNetLength();
+        }
+        onTextChange(position, codeArea.getLength() - unchangedSuffix);
+    }
+
+    private void onTextChange(int position, int insertionEnd) {
+        version++;
+        int firstParagraph = codeArea.offsetToPosition(position, Bias.Forward).getMajor();
+        int lastParagraph = codeArea.offsetToPosition(insertionEnd, Bias.Forward).getMajor();
+        int insertedLines = lastParagraph - firstParagraph;
+        int newCount = codeArea.getParagraphs().size();
+        int removedLines = insertedLines - (newCount - paragraphCount);
+
+        // the states of the paragraphs after the removed ones move to after the inserted ones
+        int tailFrom = firstParagraph + 1 + removedLines;
+        if (newCount > paragraphStates.length) {
+            paragraphStates = Arrays.copyOf(paragraphStates, Math.max(newCount, paragraphStates.length * 3 / 2));
+        }
+        System.arraycopy(paragraphStates, tailFrom, paragraphStates, firstParagraph + 1 + insertedLines,
+                paragraphCount - tailFrom);
+        Arrays.fill(paragraphStates, firstParagraph, firstParagraph + 1 + insertedLines, STATE_UNKNOWN);
+        if (unknownFrom >= tailFrom) {
+            unknownFrom += newCount - paragraphCount;
+        }
+        else if (unknownFrom > firstParagraph) {
+            unknownFrom = firstParagraph + 1;
+        }
+        paragraphCount = newCount;
+
+        if (dirtyFrom == -1) {
+            dirtyFrom = firstParagraph;
+            dirtyTo = lastParagraph;
+        }
+        else {
+            int shiftedDirtyTo = dirtyTo > firstParagraph + removedLines
+                    ? dirtyTo + insertedLines - removedLines
+                    : Math.min(dirtyTo, lastParagraph);
+            dirtyFrom = Math.min(dirtyFrom, firstParagraph);
+            dirtyTo = Math.max(shiftedDirtyTo, lastParagraph);
+        }
+
+        boolean largeDocument = codeArea.getLength() > VIEWPORT_MODE_THRESHOLD;
+        if (viewportMode && !largeDocument) {
+            // paragraphs that were never scrolled into view still need highlighting
+            dirtyFrom = firstUnknown();
+            dirtyTo = lastUnknown();
+        }
+        viewportMode = largeDocument;
+    }
+
+    private int state(int paragraph) {
+        return paragraph >= unknownFrom ? STATE_UNKNOWN : paragraphStates[paragraph];
+    }
+
+    private int firstUnknown() {
+        for (int i = 0; i < Math.min(unknownFrom, paragraphCount); i++) {
+            if (paragraphStates[i] == STATE_UNKNOWN) {
+                return i;
+            }
+        }
+        return unknownFrom < paragraphCount ? unknownFrom : -1;
+    }
+
+    private int lastUnknown() {
+        if (unknownFrom < paragraphCount) {
+            return paragraphCount - 1;
+        }
+        for (int i = paragraphCount - 1; i >= 0; i--) {
+            if (paragraphStates[i] == STATE_UNKNOWN) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Optional<HighlightRequest> createRequest() {
+        if (!viewportMode) {
+            if (dirtyFrom == -1) {
+                return Optional.empty();
+            }
+            return Optional.of(new HighlightRequest(dirtyFrom, dirtyTo, paragraphCount - 1));
+        }
+
+        if (codeArea.getVisibleParagraphs().isEmpty()) {
+            return Optional.empty();
+        }
+        int windowFrom = Math.max(0, codeArea.firstVisibleParToAllParIndex() - VIEWPORT_MARGIN);
+        int windowTo = Math.min(paragraphCount - 1, codeArea.lastVisibleParToAllParIndex() + VIEWPORT_MARGIN);
+        int firstUnknown = -1;
+        int lastUnknown = -1;
+        for (int i = windowFrom; i <= windowTo; i++) {
+            if (state(i) == STATE_UNKNOWN) {
+                if (firstUnknown == -1) {
+                    firstUnknown = i;
+                }
+                lastUnknown = i;
+            }
+        }
+        if (firstUnknown == -1) {
+            return Optional.empty();
+        }
+        return Optional.of(new HighlightRequest(firstUnknown, lastUnknown, windowTo));
+    }
+
+    private Task<HighlightResult> highlightAsync(HighlightRequest request) {
+        DocumentSnapshot snapshot = new DocumentSnapshot(codeArea.getContent().snapshot());
+        long taskVersion = version;
+        // only the states the task can look at are copied, from the paragraph before the damage to the last one it
+        // may stop at
+        int cachedFrom = Math.max(0, request.firstParagraph() - 1);
+        int cachedTo = viewportMode
+                ? request.lastParagraph()
+                : Math.min(request.lastParagraph(), request.lastDirtyParagraph() + CONVERGENCE_WINDOW);
+        int[] cachedStates = new int[cachedTo - cachedFrom + 1];
+        int knownTo = Math.max(cachedFrom, Math.min(cachedTo + 1, unknownFrom));
+        System.arraycopy(paragraphStates, cachedFrom, cachedStates, 0, knownTo - cachedFrom);
+        Arrays.fill(cachedStates, knownTo - cachedFrom, cachedStates.length, STATE_UNKNOWN);
+
+        Task<HighlightResult> task = new Task<>() {
+            @Override
+            protected HighlightResult call() {
+                return rehighlight(snapshot, taskVersion, request, cachedStates, cachedFrom, this);
+            }
+        };
+        executor.execute(task);
+        return task;
+    }
+
+    // re-lexes from the first damaged paragraph and stops once a paragraph past the damage ends in its cached state,
+    // or at the request limit
+    private static HighlightResult rehighlight(DocumentSnapshot snapshot, long taskVersion, HighlightRequest request,
+                                               int[] cachedStates, int cachedFrom, Task<?> task) {
+        StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
+        int[] states = new int[64];
+        int stateCount = 0;
+        int firstParagraph = request.firstParagraph();
+        // in viewport mode the preceding paragraph may never have been lexed, assume it ended in plain code
+        int state = firstParagraph == 0 ? STATE_UNKNOWN : cachedState(cachedStates, cachedFrom, firstParagraph - 1);
+        if (state == STATE_UNKNOWN) {
+            state = STATE_DEFAULT;
+        }
+        boolean converged = false;
+        for (int i = firstParagraph; i <= request.lastParagraph(); i++) {
+            if (task.isCancelled()) {
+                return null;
+            }
+            if (i > firstParagraph) {
+                spansBuilder.add(Collections.emptyList(), 1);
+            }
+            state = computeParagraphHighlighting(snapshot.getParagraph(i), state, spansBuilder);
+            if (stateCount == states.length) {
+                states = Arrays.copyOf(states, stateCount * 2);
+            }
+            states[stateCount++] = state;
+            if (i >= request.lastDirtyParagraph() && cachedState(cachedStates, cachedFrom, i) == state) {
+                converged = true;
+                break;
+            }
+        }
+        return new HighlightResult(taskVersion, firstParagraph, Arrays.copyOf(states, stateCount),
+                spansBuilder.create(), !converged);
+    }
+
+    // the cached state of paragraph, unknown outside the copied window
+    private static int cachedState(int[] cachedStates, int cachedFrom, int paragraph) {
+        int i = paragraph - cachedFrom;
+        return i >= 0 && i < cachedStates.length ? cachedStates[i] : STATE_UNKNOWN;
+    }
+
+    private void applyHighlighting(HighlightResult result) {
+        if (result.version() != version) {
+            return;
+        }
+        StyleSpans<Collection<String>> spans = result.spans();
+        if (searchMatches != null) {
+            spans = searchMatches.overlay(spans, codeArea.getAbsolutePosition(result.firstParagraph(), 0));
+        }
+        codeArea.setStyleSpans(result.firstParagraph(), 0, spans);
+        upToDate = null;
+        int[] states = result.states();
+        if (unknownFrom < result.firstParagraph()) {
+            // the paragraphs between the marker and the result stay unknown
+            Arrays.fill(paragraphStates, unknownFrom, result.firstParagraph(), STATE_UNKNOWN);
+            unknownFrom = paragraphCount;
+        }
+        System.arraycopy(states, 0, paragraphStates, result.firstParagraph(), states.length);
+        if (result.invalidatesFollowing()) {
+            // the lexer state leaving the window changed, paragraphs below must be re-lexed once they are visible
+            unknownFrom = result.firstParagraph() + states.length;
+        }
+        if (!viewportMode) {
+            dirtyFrom = -1;
+            dirtyTo = -1;
+        }
+    }
+
+    private record HighlightRequest(int firstParagraph, int lastDirtyParagraph, int lastParagraph) {
+    }
+
+    private record HighlightResult(long version, int firstParagraph, int[] states,
+                                   StyleSpans<Collection<String>> spans, boolean invalidatesFollowing) {
+    }
+}
@@ -0,0 +1,444 @@
+package com.thelitblock.texteditor;
+
+import java.util.Arrays;
+
+import static com.thelitblock.texteditor.SyntaxHighlighting.STATE_BLOCK_COMMENT;
+import static com.thelitblock.texteditor.SyntaxHighlighting.STATE_DEFAULT;
+
+public class JavaLexer {
+    static final int TOKEN_KEYWORD = 1;
+    static final int TOKEN_STRING = 2;
+    static final int TOKEN_BOOLEAN = 3;
+    static final int TOKEN_CHARACTER = 4;
+    static final int TOKEN_INTEGER = 5;
+    static final int TOKEN_FLOAT = 6;
+    static final int TOKEN_DOUBLE = 7;
+    static final int TOKEN_LONG = 8;
+    static final int TOKEN_PAREN = 9;
+    static final int TOKEN_BRACE = 10;
+    static final int TOKEN_BRACKET = 11;
+    static final int TOKEN_SEMICOLON = 12;
+    static final int TOKEN_COMMENT = 13;
+    static final int TOKEN_FUNCTION = 14;
+    static final int TOKEN_ANNOTATION = 15;
+    static final int TOKEN_VARIABLE = 16;
+    static final int TOKEN_OPERATOR = 17;
+    static final int TOKEN_COMMA = 18;
+    static final int TOKEN_PERIOD = 19;
+    static final int TOKEN_IMPORT_PERIOD = 20;
+    static final int TOKEN_METHOD_CALL_PERIOD = 21;
+
+    // indexed by token type
+    static final String[] STYLE_CLASSES = {
+        null, "keyword", "string", "boolean", "character",
+        "integer", "float", "double", "long", "paren",
+        "brace", "bracket", "semicolon", "comment", "function",
+        "annotation", "variable", "operator", "comma", "period",
+        "import-period", "method-call-period"
+    };
+
+    static boolean isNumber(int type) {
+        return type >= TOKEN_INTEGER && type <= TOKEN_LONG;
+    }
+
+    private static final String[] KEYWORDS = new String[] {
+        "abstract", "assert", "boolean", "break", "byte",
+        "case", "catch", "char", "class", "const",
+        "continue", "default", "do", "double", "else",
+        "enum", "extends", "final", "finally", "float",
+        "for", "goto", "if", "implements", "import",
+        "instanceof", "int", "interface", "long", "native",
+        "new", "package", "private", "protected", "public",
+        "return", "short", "static", "strictfp", "super",
+        "switch", "synchronized", "this", "throw", "throws",
+        "transient", "try", "void", "volatile", "while"
+    };
+
+    private static final byte KIND_OTHER = 0;
+    private static final byte KIND_SPACE = 1;
+    private static final byte KIND_IDENTIFIER = 2;
+    private static final byte KIND_DIGIT = 3;
+    private static final byte KIND_OPERATOR = 4;
+    private static final byte KIND_SLASH = 5;
+    private static final byte KIND_QUOTE = 6;
+    private static final byte KIND_APOSTROPHE = 7;
+    private static final byte KIND_AT = 8;
+    private static final byte KIND_PERIOD = 9;
+    private static final byte KIND_PAREN = 10;
+    private static final byte KIND_BRACE = 11;
+    private static final byte KIND_BRACKET = 12;
+    private static final byte KIND_SEMICOLON = 13;
+    private static final byte KIND_COMMA = 14;
+
+    private static final byte[] CHAR_KINDS = new byte[128];
+    // keywords bucketed by first letter
+    private static final String[][] KEYWORD_TABLE = new String[26][];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            CHAR_KINDS[c] = KIND_IDENTIFIER;
+            CHAR_KINDS[Character.toUpperCase(c)] = KIND_IDENTIFIER;
+        }
+        CHAR_KINDS['_'] = KIND_IDENTIFIER;
+        CHAR_KINDS['$'] = KIND_IDENTIFIER;
+        for (char c = '0'; c <= '9'; c++) {
+            CHAR_KINDS[c] = KIND_DIGIT;
+        }
+        for (char c : " \t\n\r\f".toCharArray()) {
+            CHAR_KINDS[c] = KIND_SPACE;
+        }
+        for (char c : "+-*%&|^~<>!=?:".toCharArray()) {
+            CHAR_KINDS[c] = KIND_OPERATOR;
+        }
+        CHAR_KINDS['/'] = KIND_SLASH;
+        CHAR_KINDS['"'] = KIND_QUOTE;
+        CHAR_KINDS['\''] = KIND_APOSTROPHE;
+        CHAR_KINDS['@'] = KIND_AT;
+        CHAR_KINDS['.'] = KIND_PERIOD;
+        CHAR_KINDS['('] = KIND_PAREN;
+        CHAR_KINDS[')'] = KIND_PAREN;
+        CHAR_KINDS['{'] = KIND_BRACE;
+        CHAR_KINDS['}'] = KIND_BRACE;
+        CHAR_KINDS['['] = KIND_BRACKET;
+        CHAR_KINDS[']'] = KIND_BRACKET;
+        CHAR_KINDS[';'] = KIND_SEMICOLON;
+        CHAR_KINDS[','] = KIND_COMMA;
+
+        for (char c = 'a'; c <= 'z'; c++) {
+            final char first = c;
+            KEYWORD_TABLE[c - 'a'] = Arrays.stream(KEYWORDS)
+                    .filter(keyword -> keyword.charAt(0) == first)
+                    .toArray(String[]::new);
+        }
+    }
+
+    // (start, end, type) triples, reused between calls
+    private int[] tokens = new int[3 * 256];
+    private int tokenCount;
+
+    int getTokenCount() {
+        return tokenCount;
+    }
+
+    int getTokenStart(int index) {
+        return tokens[3 * index];
+    }
+
+    int getTokenEnd(int index) {
+        return tokens[3 * index + 1];
+    }
+
+    int getTokenType(int index) {
+        return tokens[3 * index + 2];
+    }
+
+    int lex(CharSequence text, int state) {
+        tokenCount = 0;
+        int end = text.length();
+        int pos = 0;
+        boolean inImport = false;
+
+        if (state == STATE_BLOCK_COMMENT) {
+            int commentEnd = findBlockCommentEnd(text, 0, end);
+            if (commentEnd == -1) {
+                addToken(0, end, TOKEN_COMMENT);
+                return STATE_BLOCK_COMMENT;
+            }
+            addToken(0, commentEnd, TOKEN_COMMENT);
+            pos = commentEnd;
+        }
+
+        while (pos < end) {
+            char c = text.charAt(pos);
+            switch (kindOf(c)) {
+                case KIND_SPACE -> pos++;
+                case KIND_IDENTIFIER -> {
+                    int wordEnd = scanIdentifier(text, pos + 1, end);
+                    if (isKeyword(text, pos, wordEnd)) {
+                        if (wordEnd - pos == 6 && regionEquals(text, pos, "import")) {
+                            inImport = true;
+                        }
+                        addToken(pos, wordEnd, TOKEN_KEYWORD);
+                        pos = wordEnd;
+                    }
+                    else if (isBoolean(text, pos, wordEnd)) {
+                        addToken(pos, wordEnd, TOKEN_BOOLEAN);
+                        pos = wordEnd;
+                    }
+                    else {
+                        int next = skipSpaces(text, wordEnd, end);
+                        if (next < end && text.charAt(next) == '(') {
+                            addToken(pos, next, TOKEN_FUNCTION);
+                            pos = next;
+                        }
+                        else {
+                            addToken(pos, wordEnd, TOKEN_VARIABLE);
+                            pos = wordEnd;
+                        }
+                    }
+                }
+                case KIND_DIGIT -> pos = lexNumber(text, pos, end);
+                case KIND_QUOTE -> pos = lexQuoted(text, pos, end, '"', TOKEN_STRING);
+                case KIND_APOSTROPHE -> pos = lexQuoted(text, pos, end, '\'', TOKEN_CHARACTER);
+                case KIND_AT -> {
+                    if (pos + 1 < end && kindOf(text.charAt(pos + 1)) == KIND_IDENTIFIER) {
+                        int wordEnd = scanIdentifier(text, pos + 2, end);
+                        addToken(pos, wordEnd, TOKEN_ANNOTATION);
+                        pos = wordEnd;
+                    }
+                    else {
+                        pos++;
+                    }
+                }
+                case KIND_SLASH -> {
+                    char next = pos + 1 < end ? text.charAt(pos + 1) : 0;
+                    if (next == '/') {
+                        int lineEnd = findLineEnd(text, pos, end);
+                        addToken(pos, lineEnd, TOKEN_COMMENT);
+                        pos = lineEnd;
+                    }
+                    else if (next == '*') {
+                        int commentEnd = findBlockCommentEnd(text, pos + 2, end);
+                        if (commentEnd == -1) {
+                            addToken(pos, end, TOKEN_COMMENT);
+                            return STATE_BLOCK_COMMENT;
+                        }
+                        addToken(pos, commentEnd, TOKEN_COMMENT);
+                        pos = commentEnd;
+                    }
+                    else {
+                        addToken(pos, pos + 1, TOKEN_OPERATOR);
+                        pos++;
+                    }
+                }
+                case KIND_OPERATOR -> {
+                    addToken(pos, pos + 1, TOKEN_OPERATOR);
+                    pos++;
+                }
+                case KIND_PERIOD -> {
+                    if (pos + 1 < end && kindOf(text.charAt(pos + 1)) == KIND_DIGIT) {
+                        pos = lexNumber(text, pos, end);
+                    }
+                    else {
+                        int type = inImport ? TOKEN_IMPORT_PERIOD
+                                : isMethodCallAhead(text, pos + 1, end) ? TOKEN_METHOD_CALL_PERIOD
+                                : TOKEN_PERIOD;
+                        addToken(pos, pos + 1, type);
+                        pos++;
+                    }
+                }
+                case KIND_PAREN -> {
+                    addToken(pos, pos + 1, TOKEN_PAREN);
+                    pos++;
+                }
+                case KIND_BRACE -> {
+                    addToken(pos, pos + 1, TOKEN_BRACE);
+                    pos++;
+                }
+                case KIND_BRACKET -> {
+                    addToken(pos, pos + 1, TOKEN_BRACKET);
+                    pos++;
+                }
+                case KIND_SEMICOLON -> {
+                    inImport = false;
+                    addToken(pos, pos + 1, TOKEN_SEMICOLON);
+                    pos++;
+                }
+                case KIND_COMMA -> {
+                    addToken(pos, pos + 1, TOKEN_COMMA);
+                    pos++;
+                }
+                default -> pos++;
+            }
+        }
+        return STATE_DEFAULT;
+    }
+
+    private void addToken(int start, int end, int type) {
+        int last = 3 * (tokenCount - 1);
+        if (tokenCount > 0 && tokens[last + 1] == start && tokens[last + 2] == type) {
+            tokens[last + 1] = end;
+            return;
+        }
+        if (3 * tokenCount == tokens.length) {
+            tokens = Arrays.copyOf(tokens, tokens.length * 2);
+        }
+        int index = 3 * tokenCount++;
+        tokens[index] = start;
+        tokens[index + 1] = end;
+        tokens[index + 2] = type;
+    }
+
+    private static byte kindOf(char c) {
+        if (c < 128) {
+            return CHAR_KINDS[c];
+        }
+        if (Character.isJavaIdentifierStart(c)) {
+            return KIND_IDENTIFIER;
+        }
+        return Character.isWhitespace(c) ? KIND_SPACE : KIND_OTHER;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        if (c < 128) {
+            byte kind = CHAR_KINDS[c];
+            return kind == KIND_IDENTIFIER || kind == KIND_DIGIT;
+        }
+        return Character.isJavaIdentifierPart(c);
+    }
+
+    private static int scanIdentifier(CharSequence text, int pos, int end) {
+        while (pos < end && isIdentifierPart(text.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int scanDigits(CharSequence text, int pos, int end, int radix) {
+        while (pos < end) {
+            char c = text.charAt(pos);
+            if (c != '_' && Character.digit(c, radix) == -1) {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int skipSpaces(CharSequence text, int pos, int end) {
+        while (pos < end && kindOf(text.charAt(pos)) == KIND_SPACE) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int findLineEnd(CharSequence text, int pos, int end) {
+        while (pos < end && text.charAt(pos) != '\n') {
+            pos++;
+        }
+        return pos;
+    }
+
+    // returns the index just past the closing "*/", or -1 if the comment is not closed before end
+    private static int findBlockCommentEnd(CharSequence text, int pos, int end) {
+        for (int i = pos; i + 1 < end; i++) {
+            if (text.charAt(i) == '*' && text.charAt(i + 1) == '/') {
+                return i + 2;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isKeyword(CharSequence text, int start, int end) {
+        char first = text.charAt(start);
+        if (first < 'a' || first > 'z') {
+            return false;
+        }
+        int length = end - start;
+        for (String keyword : KEYWORD_TABLE[first - 'a']) {
+            if (keyword.length() == length && regionEquals(text, start, keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isBoolean(CharSequence text, int start, int end) {
+        int length = end - start;
+        return (length == 4 && regionEquals(text, start, "true"))
+                || (length == 5 && regionEquals(text, start, "false"));
+    }
+
+    private static boolean regionEquals(CharSequence text, int start, String word) {
+        for (int i = 1; i < word.length(); i++) {
+            if (text.charAt(start + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return text.charAt(start) == word.charAt(0);
+    }
+
+    private static boolean isMethodCallAhead(CharSequence text, int pos, int end) {
+        pos = skipSpaces(text, pos, end);
+        if (pos >= end || kindOf(text.charAt(pos)) != KIND_IDENTIFIER) {
+            return false;
+        }
+        pos = skipSpaces(text, scanIdentifier(text, pos + 1, end), end);
+        return pos < end && text.charAt(pos) == '(';
+    }
+
+    // strings and characters end at the closing quote or, if unterminated, at the end of the line
+    private int lexQuoted(CharSequence text, int start, int end, char quote, int type) {
+        int pos = start + 1;
+        while (pos < end) {
+            char c = text.charAt(pos);
+            if (c == '\\' && pos + 1 < end && text.charAt(pos + 1) != '\n') {
+                pos += 2;
+                continue;
+            }
+            if (c == '\n') {
+                break;
+            }
+            pos++;
+            if (c == quote) {
+                break;
+            }
+        }
+        addToken(start, pos, type);
+        return pos;
+    }
+
+    private int lexNumber(CharSequence text, int start, int end) {
+        int pos = start;
+        boolean decimal = true;
+        boolean floating = false;
+        char c = text.charAt(pos);
+        char next = pos + 1 < end ? Character.toLowerCase(text.charAt(pos + 1)) : 0;
+
+        if (c == '0' && (next == 'x' || next == 'b' || next == 'o')) {
+            decimal = false;
+            pos = scanDigits(text, pos + 2, end, next == 'x' ? 16 : next == 'b' ? 2 : 8);
+        }
+        else {
+            pos = scanDigits(text, pos, end, 10);
+            if (pos + 1 < end && text.charAt(pos) == '.' && kindOf(text.charAt(pos + 1)) == KIND_DIGIT) {
+                floating = true;
+                pos = scanDigits(text, pos + 1, end, 10);
+            }
+            if (pos < end && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+                int exponent = pos + 1;
+                if (exponent < end && (text.charAt(exponent) == '+' || text.charAt(exponent) == '-')) {
+                    exponent++;
+                }
+                if (exponent < end && kindOf(text.charAt(exponent)) == KIND_DIGIT) {
+                    floating = true;
+                    pos = scanDigits(text, exponent, end, 10);
+                }
+            }
+        }
+
+        int type = floating ? TOKEN_DOUBLE : TOKEN_INTEGER;
+        if (pos < end) {
+            char suffix = text.charAt(pos);
+            if (suffix == 'l' || suffix == 'L') {
+                type = TOKEN_LONG;
+                pos++;
+            }
+            else if (decimal && (suffix == 'f' || suffix == 'F')) {
+                type = TOKEN_FLOAT;
+                pos++;
+            }
+            else if (decimal && (suffix == 'd' || suffix == 'D')) {
+                type = TOKEN_DOUBLE;
+                pos++;
+            }
+        }
+
+        // something like 12abc is not a literal, leave the whole word unstyled
+        if (pos < end && isIdentifierPart(text.charAt(pos))) {
+            return scanIdentifier(text, pos, end);
+        }
+        addToken(start, pos, type);
+        return pos;
+    }
+}
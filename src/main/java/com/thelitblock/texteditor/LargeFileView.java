@@ -0,0 +1,302 @@
+package com.thelitblock.texteditor;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+import javafx.concurrent.Task;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Node;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.text.Text;
+import org.fxmisc.flowless.Cell;
+import org.fxmisc.flowless.VirtualFlow;
+import org.fxmisc.flowless.VirtualizedScrollPane;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// read-only view for files too large to load into a CodeArea, lines are decoded straight from the mapped file
+public class LargeFileView {
+    static final long LARGE_FILE_THRESHOLD = Long.getLong("texteditor.largeFileThreshold", 256L << 20);
+
+    private static final int REGION_BITS = 30;
+    private static final long REGION_MASK = (1L << REGION_BITS) - 1;
+    // the index keeps the number of lines before every block of this many bytes, so finding a line scans at most one
+    // block however long the lines are
+    private static final int BLOCK_BITS = 16;
+    private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+    private static final int MAX_LINE_BYTES = 16 * 1024;
+
+    private final File file;
+    private final FileChannel channel;
+    private final long size;
+    private final MappedByteBuffer[] regions;
+
+    // line breaks before the start of each block, filled in by the indexer up to checkpointCount
+    private final int[] checkpoints;
+    private volatile int checkpointCount = 0;
+    private volatile int indexedLines = 0;
+    private final AtomicBoolean refreshPending = new AtomicBoolean(false);
+    private Task<Void> indexer;
+
+    private final LineList lines = new LineList();
+    private final VirtualFlow<Integer, LineCell> flow;
+    private final Label statusLabel = new Label();
+    private final BorderPane root = new BorderPane();
+
+    private int cachedLine = -1;
+    private long cachedLineStart = -1;
+
+    LargeFileView(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.size = channel.size();
+        this.regions = new MappedByteBuffer[(int) ((size >>> REGION_BITS) + 1)];
+        this.checkpoints = new int[(int) ((size >>> BLOCK_BITS) + 1)];
+
+        flow = VirtualFlow.createVertical(lines, line -> new LineCell());
+        TextField goToLineField = new TextField();
+        goToLineField.setPromptText("Go to line");
+        goToLineField.setPrefColumnCount(10);
+        goToLineField.setOnAction(event -> {
+            try {
+                goToLine(Integer.parseInt(goToLineField.getText().trim()));
+            }
+            catch (NumberFormatException e) {
+                goToLineField.selectAll();
+            }
+        });
+
+        HBox toolBar = new HBox(5, goToLineField, statusLabel);
+        toolBar.setAlignment(Pos.CENTER_LEFT);
+        toolBar.setPadding(new Insets(5));
+        root.setTop(toolBar);
+        root.setCenter(new VirtualizedScrollPane<>(flow));
+        root.setId("largeFileView");
+
+        startIndexing();
+    }
+
+    Node getNode() {
+        return root;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int getLineCount() {
+        return lines.size();
+    }
+
+    void goToLine(int lineNumber) {
+        if (!lines.isEmpty()) {
+            flow.showAsFirst(Math.max(0, Math.min(lineNumber, lines.size()) - 1));
+        }
+    }
+
+    void close() {
+        if (indexer != null) {
+            indexer.cancel();
+        }
+        try {
+            channel.close();
+        }
+        catch (IOException e) {
+            System.out.println("Error closing file");
+        }
+    }
+
+    private void startIndexing() {
+        indexer = new Task<>() {
+            @Override
+            protected Void call() throws IOException {
+                buildIndex(this);
+                return null;
+            }
+        };
+        indexer.setOnFailed(event -> statusLabel.setText("Error reading file"));
+        FileOperations.ioExecutor.execute(indexer);
+    }
+
+    private void buildIndex(Task<?> task) throws IOException {
+        int lineCount = 0;
+        byte lastByte = '\n';
+        long regionStart = 0;
+        while (regionStart < size && !task.isCancelled()) {
+            int length = (int) Math.min(1L << REGION_BITS, size - regionStart);
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, length);
+            // regions are a whole number of blocks, so every block starts inside a region
+            for (int blockStart = 0; blockStart < length; blockStart += BLOCK_SIZE) {
+                addCheckpoint(lineCount);
+                int blockEnd = Math.min(length, blockStart + BLOCK_SIZE);
+                for (int i = blockStart; i < blockEnd; i++) {
+                    if (region.get(i) == '\n') {
+                        lineCount++;
+                        if ((lineCount & 0xFFFF) == 0) {
+                            publish(lineCount, false);
+                            if (task.isCancelled()) {
+                                return;
+                            }
+                        }
+                    }
+                }
+            }
+            lastByte = region.get(length - 1);
+            regionStart += length;
+        }
+        // a trailing line without a newline still counts
+        publish(lastByte != '\n' ? lineCount + 1 : lineCount, true);
+    }
+
+    private void addCheckpoint(int linesBefore) {
+        checkpoints[checkpointCount] = linesBefore;
+        checkpointCount = checkpointCount + 1;
+    }
+
+    private void publish(int lineCount, boolean done) {
+        indexedLines = lineCount;
+        if (done || refreshPending.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                refreshPending.set(false);
+                lines.grow(indexedLines);
+                statusLabel.setText(String.format("%,d lines%s", indexedLines, done ? "" : " (indexing...)"));
+            });
+        }
+    }
+
+    private long lineStart(int line) {
+        if (line == 0) {
+            return 0;
+        }
+        if (line == cachedLine) {
+            return cachedLineStart;
+        }
+        // the last block that starts before the line break ending line - 1
+        int low = 0;
+        int high = checkpointCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (checkpoints[middle] < line) {
+                low = middle;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        long offset = (long) low << BLOCK_BITS;
+        int linesBefore = checkpoints[low];
+        // the start of the line shown last is nearer when scrolling down line by line
+        if (cachedLine != -1 && cachedLine < line && cachedLineStart > offset) {
+            offset = cachedLineStart;
+            linesBefore = cachedLine;
+        }
+        for (int remaining = line - linesBefore; remaining > 0; offset++) {
+            if (byteAt(offset) == '\n') {
+                remaining--;
+            }
+        }
+        cachedLine = line;
+        cachedLineStart = offset;
+        return offset;
+    }
+
+    // offset of the line break ending the line that starts at offset, or limit if there is none before it
+    private long lineEnd(long offset, long limit) {
+        while (offset < limit && byteAt(offset) != '\n') {
+            offset++;
+        }
+        return offset;
+    }
+
+    String getLine(int line) {
+        long start = lineStart(line);
+        long end = lineEnd(start, Math.min(size, start + MAX_LINE_BYTES));
+        if (end > start && byteAt(end - 1) == '\r') {
+            end--;
+        }
+        byte[] bytes = new byte[(int) (end - start)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = byteAt(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private byte byteAt(long offset) {
+        int index = (int) (offset >>> REGION_BITS);
+        MappedByteBuffer region = regions[index];
+        if (region == null) {
+            try {
+                long regionStart = (long) index << REGION_BITS;
+                region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, Math.min(1L << REGION_BITS, size - regionStart));
+            }
+            catch (IOException e) {
+                throw new IllegalStateException("Could not map " + file, e);
+            }
+            regions[index] = region;
+        }
+        return region.get((int) (offset & REGION_MASK));
+    }
+
+    // an ObservableList of line numbers whose size follows the background index
+    private static class LineList extends ObservableListBase<Integer> {
+        private int size = 0;
+
+        void grow(int newSize) {
+            if (newSize > size) {
+                int oldSize = size;
+                size = newSize;
+                beginChange();
+                nextAdd(oldSize, newSize);
+                endChange();
+            }
+        }
+
+        @Override
+        public Integer get(int index) {
+            return index;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private class LineCell implements Cell<Integer, HBox> {
+        private final Label lineNumber = new Label();
+        private final Text text = new Text();
+        private final HBox node = new HBox(8, lineNumber, text);
+
+        LineCell() {
+            lineNumber.getStyleClass().add("lineno");
+            lineNumber.setMinWidth(60);
+            lineNumber.setAlignment(Pos.CENTER_RIGHT);
+            text.setStyle("-fx-font-family: 'Menlo'; -fx-font-size: 10pt");
+        }
+
+        @Override
+        public HBox getNode() {
+            return node;
+        }
+
+        @Override
+        public boolean isReusable() {
+            return true;
+        }
+
+        @Override
+        public void updateItem(Integer line) {
+            lineNumber.setText(Integer.toString(line + 1));
+            text.setText(getLine(line));
+        }
+    }
+}
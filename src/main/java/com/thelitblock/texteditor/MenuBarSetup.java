@@ -21,14 +21,15 @@ public class MenuBarSetup {
         MenuItem newItem = new MenuItem("New");
         MenuItem openItem = new MenuItem("Open");
         MenuItem openFolderItem = new MenuItem("Open Folder");
+        MenuItem goToFileItem = new MenuItem("Go to File");
         MenuItem saveItem = new MenuItem("Save");
         MenuItem saveAsItem = new MenuItem("Save As");
         MenuItem exitItem = new MenuItem("Exit");
 
-        fileMenu.getItems().addAll(newItem, openItem, openFolderItem, new SeparatorMenuItem(), saveItem, saveAsItem, new SeparatorMenuItem(), exitItem);
+        fileMenu.getItems().addAll(newItem, openItem, openFolderItem, goToFileItem, new SeparatorMenuItem(), saveItem, saveAsItem, new SeparatorMenuItem(), exitItem);
 
         Menu editMenu = new Menu("Edit");
-        editMenu.getItems().addAll(new MenuItem("Cut"), new MenuItem("Copy"), new MenuItem("Paste"), new MenuItem("Select All"));
+        editMenu.getItems().addAll(new MenuItem("Cut"), new MenuItem("Copy"), new MenuItem("Paste"), new MenuItem("Select All"), new SeparatorMenuItem(), new MenuItem("Find in Files"));
 
         Menu themeMenu = new Menu("Theme");
         themeMenu.getItems().addAll(new MenuItem("Dark Theme"), new MenuItem("Light Theme"));
@@ -29,6 +29,11 @@ public class MenuEventHandler implements EventHandler<ActionEvent> {
 
                 Optional<ButtonType> result = alert.showAndWait();
                 if (result.isPresent() && result.get() == btnSave) {
+                    if ("Exit".equals(mItem.getText())) {
+                        // the save runs in the background, leave once it is done
+                        TextEditor.saveFile(() -> System.exit(0));
+                        return;
+                    }
                     TextEditor.saveFile();
                 }
             }
@@ -46,6 +51,9 @@ public class MenuEventHandler implements EventHandler<ActionEvent> {
         else if ("Open".equals(mItem.getText())) {
             TextEditor.displayFile();
         }
+        else if ("Go to File".equals(mItem.getText())) {
+            TextEditor.toggleQuickOpen();
+        }
         else if ("Save".equals(mItem.getText())) {
             TextEditor.saveFile();
         }
@@ -64,6 +72,9 @@ public class MenuEventHandler implements EventHandler<ActionEvent> {
         else if ("Select All".equals(mItem.getText())) {
             TextEditor.selectAll();
         }
+        else if ("Find in Files".equals(mItem.getText())) {
+            TextEditor.toggleFindInFiles();
+        }
         else if ("Dark Theme".equals(mItem.getText())) {
             TextEditor.changeDarkTheme();
         }
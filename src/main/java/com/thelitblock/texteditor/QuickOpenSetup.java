@@ -0,0 +1,250 @@
+package com.thelitblock.texteditor;
+
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.VBox;
+import javafx.stage.Popup;
+import javafx.stage.Window;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Ctrl+P file finder over the opened folder. The paths come from the trigram index, which walks the folder once and
+// watches every folder below it from then on, and the FileFinder is only built again when the index gained or lost a
+// file. Until the index is ready, or when it could not watch every folder, the folder is walked here, and that walk
+// stops when the finder is hidden
+public class QuickOpenSetup {
+    private static final ExecutorService matcher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "quick-open");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Popup popup = new Popup();
+    private final VBox panel = new VBox();
+    private final TextField searchText = new TextField();
+    private final Label status = new Label();
+    private final ListView<String> resultList = new ListView<>();
+    private final FolderSetup folderSetup;
+    private volatile FileFinder finder;
+    // file list version of the index when the finder was built, -1 when it was walked before the index was ready
+    private int finderVersion = -1;
+    // bumped for every scan and to stop the one running, which gives up once it sees a newer id
+    private volatile int scanId = 0;
+    private boolean scanning = false;
+    private Path scanRoot;
+    // bumped for every query so the matcher skips queries that were typed over and results that are outdated
+    private volatile int generation = 0;
+    // only used on the matcher thread
+    private FileFinder.Matches lastMatches;
+
+    public QuickOpenSetup(FolderSetup folderSetup) {
+        this.folderSetup = folderSetup;
+        setupPanel();
+    }
+
+    private void setupPanel() {
+        searchText.setPromptText("Go to File");
+        searchText.textProperty().addListener((obs, oldValue, newValue) -> updateResults());
+        searchText.setOnKeyPressed(event -> {
+            if (event.getCode() == KeyCode.DOWN || event.getCode() == KeyCode.UP) {
+                int selected = resultList.getSelectionModel().getSelectedIndex() + (event.getCode() == KeyCode.DOWN ? 1 : -1);
+                if (selected >= 0 && selected < resultList.getItems().size()) {
+                    resultList.getSelectionModel().select(selected);
+                    resultList.scrollTo(selected);
+                }
+                event.consume();
+            }
+            else if (event.getCode() == KeyCode.ENTER) {
+                openSelectedResult();
+                event.consume();
+            }
+        });
+
+        resultList.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(String item, boolean empty) {
+                super.updateItem(item, empty);
+                if (empty || item == null) {
+                    setText(null);
+                }
+                else {
+                    int nameStart = item.lastIndexOf('/') + 1;
+                    setText(nameStart == 0 ? item : item.substring(nameStart) + "    " + item.substring(0, nameStart - 1));
+                }
+            }
+        });
+        resultList.setOnMouseClicked(event -> {
+            if (event.getButton() == MouseButton.PRIMARY && event.getClickCount() == 2) {
+                openSelectedResult();
+            }
+        });
+        resultList.setPrefHeight(300);
+
+        panel.getChildren().addAll(searchText, status, resultList);
+        panel.setSpacing(5);
+        panel.setPadding(new Insets(5));
+        panel.setPrefWidth(600);
+        panel.setStyle("-fx-background-color: -fx-background; -fx-border-color: -fx-box-border;");
+        panel.setId("quickOpenPanel");
+
+        popup.getContent().add(panel);
+        popup.setAutoHide(true);
+        popup.setHideOnEscape(true);
+        popup.setOnHidden(event -> cancelScan());
+    }
+
+    void show(Window owner) {
+        File root = folderSetup.getRootDirectory();
+        if (root == null) {
+            status.setText("Open a folder to search in");
+            resultList.getItems().clear();
+        }
+        else {
+            refresh(root.toPath().toAbsolutePath().normalize(), true);
+        }
+        popup.show(owner, owner.getX() + (owner.getWidth() - panel.getPrefWidth()) / 2, owner.getY() + 60);
+        searchText.requestFocus();
+        searchText.selectAll();
+    }
+
+    void hide() {
+        popup.hide();
+    }
+
+    boolean isShowing() {
+        return popup.isShowing();
+    }
+
+    // builds the finder again when the folder changed or the index gained or lost files since it was built. When the
+    // index could not watch every folder it may not know of new files, then the folder is walked every time the
+    // finder is shown
+    private void refresh(Path root, boolean shown) {
+        if (scanning && !scanRoot.equals(root)) {
+            cancelScan();
+        }
+        if (finder != null && !finder.getRoot().equals(root)) {
+            finder = null;
+            status.setText("Scanning files...");
+            resultList.getItems().clear();
+        }
+        if (scanning) {
+            return;
+        }
+        TrigramIndex index = folderSetup.getIndex();
+        boolean indexReady = index != null && index.isReady();
+        boolean unwatched = indexReady && !index.isWatchingAll();
+        if (finder == null || indexReady && index.getFileListVersion() != finderVersion || shown && unwatched) {
+            scan(root, indexReady ? index : null, !indexReady || unwatched);
+        }
+    }
+
+    // builds the finder from the paths of the index, or from a walk of the folder when walk is set
+    private void scan(Path root, TrigramIndex index, boolean walk) {
+        int id = ++scanId;
+        scanning = true;
+        scanRoot = root;
+        Runnable task = () -> {
+            FileFinder scanned = null;
+            // taken first, files the index gains meanwhile only make the finder be built once more
+            int version = index == null ? -1 : index.getFileListVersion();
+            try {
+                if (walk) {
+                    scanned = FileFinder.scan(root, () -> scanId != id);
+                }
+                else {
+                    scanned = FileFinder.of(root, index.getPaths());
+                }
+            }
+            catch (IOException e) {
+                System.out.println("Error scanning " + root);
+            }
+            FileFinder result = scanned;
+            int resultVersion = version;
+            Platform.runLater(() -> {
+                if (scanId != id) {
+                    return;
+                }
+                scanning = false;
+                if (result != null) {
+                    finder = result;
+                    finderVersion = resultVersion;
+                    updateResults();
+                }
+            });
+        };
+        // the index is already in memory, only a walk has to wait for the disk
+        if (walk) {
+            FileOperations.ioExecutor.execute(task);
+        }
+        else {
+            matcher.execute(task);
+        }
+    }
+
+    private void cancelScan() {
+        if (scanning) {
+            scanId++;
+            scanning = false;
+        }
+    }
+
+    private void updateResults() {
+        File root = folderSetup.getRootDirectory();
+        if (root != null) {
+            refresh(root.toPath().toAbsolutePath().normalize(), false);
+        }
+        int query = ++generation;
+        String text = searchText.getText();
+        FileFinder currentFinder = finder;
+        if (currentFinder == null) {
+            return;
+        }
+        if (text.isBlank()) {
+            resultList.getItems().clear();
+            status.setText(currentFinder.size() + " files");
+            return;
+        }
+        matcher.execute(() -> {
+            // the keys typed since are already queued behind this query
+            if (query != generation) {
+                return;
+            }
+            long start = System.nanoTime();
+            FileFinder.Matches matches = currentFinder.find(text, lastMatches);
+            lastMatches = matches;
+            List<String> paths = matches.bestPaths();
+            long micros = (System.nanoTime() - start) / 1000;
+            Platform.runLater(() -> {
+                if (query != generation) {
+                    return;
+                }
+                resultList.getItems().setAll(paths);
+                if (!paths.isEmpty()) {
+                    resultList.getSelectionModel().select(0);
+                    resultList.scrollTo(0);
+                }
+                status.setText(matches.size() + " of " + currentFinder.size() + " files (" + micros / 1000.0 + " ms)");
+            });
+        });
+    }
+
+    private void openSelectedResult() {
+        String path = resultList.getSelectionModel().getSelectedItem();
+        FileFinder currentFinder = finder;
+        if (path != null && currentFinder != null) {
+            hide();
+            TextEditor.openFileInNewTab(currentFinder.getRoot().resolve(path).toFile());
+        }
+    }
+}
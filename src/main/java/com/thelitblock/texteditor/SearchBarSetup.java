@@ -1,5 +1,6 @@
 package com.thelitblock.texteditor;
 
+import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.*;
@@ -7,20 +8,32 @@ import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.model.TwoDimensional;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
-import static com.thelitblock.texteditor.SyntaxHighlighting.computeHighlighting;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.PatternSyntaxException;
 
 public class SearchBarSetup {
+    private static final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "search");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private HBox searchBar;
     private TextField searchText;
     private Label searchResultCount;
+    private ToggleButton matchCaseButton;
+    private ToggleButton wholeWordButton;
+    private ToggleButton regexButton;
     private TabPane tabPane;
     private int currentSearchIndex = -1;
-    private List<Integer> searchIndices = new ArrayList<>();
+    // null while no search is active, edits are only tracked for the searched tab
+    private SearchMatches matches;
+    private TabData searchedTab;
+    private SearchHighlighter searchHighlighter;
+    private Task<SearchMatches> searchTask;
 
     public SearchBarSetup(HBox searchBar, TextField searchText, Label searchResultCount, TabPane tabPane) {
         this.searchBar = searchBar;
@@ -34,6 +47,14 @@ public class SearchBarSetup {
         searchText = new TextField();
         searchText.setPromptText("Search");
 
+        matchCaseButton = new ToggleButton("Aa");
+        matchCaseButton.setSelected(true);
+        matchCaseButton.setTooltip(new Tooltip("Match case"));
+        wholeWordButton = new ToggleButton("W");
+        wholeWordButton.setTooltip(new Tooltip("Whole word"));
+        regexButton = new ToggleButton(".*");
+        regexButton.setTooltip(new Tooltip("Regular expression"));
+
         TextField replaceText = new TextField();
         replaceText.setPromptText("Replace");
 
@@ -45,13 +66,21 @@ public class SearchBarSetup {
         searchResultCount = new Label("0/0");
 
         searchText.textProperty().addListener((obs, oldText, newText) -> updateSearchResults(newText));
+        matchCaseButton.selectedProperty().addListener((obs, oldValue, newValue) -> updateSearchResults(searchText.getText()));
+        wholeWordButton.selectedProperty().addListener((obs, oldValue, newValue) -> updateSearchResults(searchText.getText()));
+        regexButton.selectedProperty().addListener((obs, oldValue, newValue) -> updateSearchResults(searchText.getText()));
+        tabPane.getSelectionModel().selectedItemProperty().addListener((obs, oldTab, newTab) -> {
+            if (searchedTab != null) {
+                updateSearchResults(searchText.getText());
+            }
+        });
 
         prevButton.setOnAction(event -> navigateSearchResults(-1));
         nextButton.setOnAction(event -> navigateSearchResults(1));
         replaceButton.setOnAction(event -> replaceCurrentOccurrence(replaceText.getText()));
         replaceAllButton.setOnAction(event -> replaceAllOccurrences(replaceText.getText()));
 
-        searchBar.getChildren().addAll(searchText, replaceText, replaceButton, replaceAllButton, prevButton, nextButton, searchResultCount);
+        searchBar.getChildren().addAll(searchText, matchCaseButton, wholeWordButton, regexButton, replaceText, replaceButton, replaceAllButton, prevButton, nextButton, searchResultCount);
         searchBar.setSpacing(5);
         searchBar.setAlignment(Pos.CENTER_LEFT);
         searchBar.setPadding(new Insets(5));
@@ -63,64 +92,113 @@ public class SearchBarSetup {
     }
 
     private void replaceCurrentOccurrence(String replacement) {
-        if (searchIndices.isEmpty() || currentSearchIndex == -1) {
+        if (matches == null || matches.isEmpty() || currentSearchIndex == -1) {
             return;
         }
 
-        Tab currentTab = tabPane.getSelectionModel().getSelectedItem();
-        if (currentTab != null) {
-            CodeArea codeArea = ((TabData) currentTab.getUserData()).codeArea;
-            int startPos = searchIndices.get(currentSearchIndex);
-            int endPos = startPos + searchText.getText().length();
-            codeArea.replaceText(startPos, endPos, replacement);
+        CodeArea codeArea = searchedTab.codeArea;
+        int startPos = matches.getStart(currentSearchIndex);
+        int endPos = matches.getEnd(currentSearchIndex);
+        int paragraph = codeArea.offsetToPosition(startPos, TwoDimensional.Bias.Forward).getMajor();
+        int column = startPos - codeArea.getAbsolutePosition(paragraph, 0);
+        String expanded = matches.getQuery().expandReplacement(codeArea.getParagraph(paragraph).getText(), column, replacement);
+        codeArea.replaceText(startPos, endPos, expanded);
 
-            updateSearchResults(searchText.getText());
-            navigateSearchResults(1);
-        }
+        currentSearchIndex = matches.indexAtOrAfter(startPos + expanded.length()) - 1;
+        navigateSearchResults(1);
     }
 
     private void replaceAllOccurrences(String replacement) {
-        if (searchIndices.isEmpty()) {
+        if (matches == null || matches.isEmpty()) {
             return;
         }
 
-        Tab currentTab = tabPane.getSelectionModel().getSelectedItem();
-        if (currentTab != null) {
-            CodeArea codeArea = ((TabData) currentTab.getUserData()).codeArea;
-            String searchTextStr = searchText.getText();
-            String text = codeArea.getText();
-            text = text.replaceAll(java.util.regex.Pattern.quote(searchTextStr), replacement);
-            codeArea.replaceText(0, codeArea.getLength(), text);
-
-            updateSearchResults(searchTextStr);
-            navigateSearchResults(1);
-        }
+        // only the matched ranges are replaced, as one change that undoes in a single step. Text away from the matches
+        // keeps its styles and the batch makes the search highlighter start a new search
+        SearchMatches.apply(searchedTab.codeArea, matches.replaceAll(searchedTab.snapshot(), replacement));
     }
 
     void updateSearchResults(String query) {
-        searchIndices.clear();
+        TabData previousTab = searchedTab;
+        stopTracking();
         currentSearchIndex = -1;
+        updateSearchResultCount();
 
-        if (query.isEmpty()) {
-            updateSearchResultCount();
-            clearHighlights();
-            return;
+        TabData tabData = TextEditor.getCurrentTabData();
+        if (!query.isEmpty() && tabData != null && tabData.codeArea != null) {
+            try {
+                SearchQuery searchQuery = new SearchQuery(query, matchCaseButton.isSelected(), wholeWordButton.isSelected(),
+                        regexButton.isSelected());
+                searchedTab = tabData;
+                startSearch(tabData, searchQuery);
+            }
+            catch (PatternSyntaxException e) {
+                searchResultCount.setText("Invalid regex");
+            }
+        }
+        if (previousTab != null && previousTab != searchedTab) {
+            SearchHighlighter.clearHighlights(previousTab.codeArea);
         }
+    }
 
-        Tab currentTab = tabPane.getSelectionModel().getSelectedItem();
-        if (currentTab != null) {
-            CodeArea codeArea = ((TabData) currentTab.getUserData()).codeArea;
-            String text = codeArea.getText();
-            int index = text.indexOf(query, 0);
-            while (index != -1) {
-                searchIndices.add(index);
-                index = text.indexOf(query, index + query.length());
+    // scans a snapshot in the background, the counter shows the matches found so far
+    private void startSearch(TabData tabData, SearchQuery query) {
+        DocumentSnapshot snapshot = tabData.snapshot();
+        long version = tabData.version;
+        Task<SearchMatches> task = new Task<>() {
+            @Override
+            protected SearchMatches call() {
+                return SearchMatches.search(query, snapshot, this::isCancelled, found -> updateMessage("?/" + found));
             }
+        };
+        task.messageProperty().addListener((obs, oldMessage, message) -> {
+            if (searchTask == task) {
+                searchResultCount.setText(message);
+            }
+        });
+        task.setOnSucceeded(event -> {
+            if (searchTask != task) {
+                // finished just before it was replaced
+                return;
+            }
+            searchTask = null;
+            if (tabData.version != version) {
+                // the text changed while scanning, the matches would not line up with it
+                startSearch(tabData, query);
+                return;
+            }
+            matches = task.getValue();
+            // a new search in the same tab repaints the old highlights around the viewport, so they are only
+            // stripped from the whole document when that tab stops being searched
+            searchHighlighter = new SearchHighlighter(tabData, matches, this::onMatchesChanged,
+                    () -> updateSearchResults(searchText.getText()));
+            updateSearchResultCount();
+            navigateSearchResults(1);
+        });
+        task.setOnFailed(event -> {
+            searchTask = null;
+            System.out.println("Error searching");
+        });
+        searchTask = task;
+        searchExecutor.execute(task);
+    }
 
-            highlightSearchResults(query);
-        }
+    private void onMatchesChanged() {
+        currentSearchIndex = Math.min(currentSearchIndex, matches.size() - 1);
+        updateSearchResultCount();
+    }
 
-        navigateSearchResults(1);
+    private void stopTracking() {
+        if (searchTask != null) {
+            searchTask.cancel();
+            searchTask = null;
+        }
+        if (searchHighlighter != null) {
+            searchHighlighter.dispose();
+            searchHighlighter = null;
+        }
+        matches = null;
+        searchedTab = null;
     }
 
     void showSearchBar() {
@@ -136,11 +214,19 @@ public class SearchBarSetup {
                 System.err.println("Root layout not found");
             }
             searchText.requestFocus();
+            if (!searchText.getText().isEmpty()) {
+                updateSearchResults(searchText.getText());
+            }
         }
     }
 
     void hideSearchBar() {
         if (searchBar.isVisible()) {
+            TabData previousTab = searchedTab;
+            stopTracking();
+            if (previousTab != null) {
+                SearchHighlighter.clearHighlights(previousTab.codeArea);
+            }
             searchBar.setManaged(false);
             searchBar.setVisible(false);
             BorderPane root = (BorderPane) tabPane.getScene().getRoot().lookup("#rootLayout");
@@ -153,63 +239,38 @@ public class SearchBarSetup {
         }
     }
 
-    private void highlightSearchResults(String query) {
-        CodeArea codeArea = TextEditor.getCurrentCodeArea();
-        if (codeArea == null) return;
-
-        codeArea.setStyleSpans(0, computeHighlighting(codeArea.getText()));
-
-        if (query == null || query.isEmpty()) return;
-
-        String text = codeArea.getText();
-        int index = 0;
-        while ((index = text.indexOf(query, index)) >= 0) {
-            int endIndex = index + query.length();
-            codeArea.setStyle(index, endIndex, Collections.singleton("search-highlight"));
-            index = endIndex;
-        }
-    }
-
-    private void clearHighlights() {
-        CodeArea codeArea = TextEditor.getCurrentCodeArea();
-        if (codeArea != null) {
-            codeArea.setStyleSpans(0, computeHighlighting(codeArea.getText()));
-        }
-    }
-
     void navigateSearchResults(int direction) {
-        if (searchIndices.isEmpty()) {
+        if (matches == null || matches.isEmpty()) {
             return;
         }
 
         currentSearchIndex += direction;
 
         if (currentSearchIndex < 0) {
-            currentSearchIndex = searchIndices.size() - 1;
+            currentSearchIndex = matches.size() - 1;
         }
-        else if (currentSearchIndex >= searchIndices.size()) {
+        else if (currentSearchIndex >= matches.size()) {
             currentSearchIndex = 0;
         }
 
-        Tab currentTab = tabPane.getSelectionModel().getSelectedItem();
-        if (currentTab != null) {
-            CodeArea codeArea = ((TabData) currentTab.getUserData()).codeArea;
-            int pos = searchIndices.get(currentSearchIndex);
-            codeArea.selectRange(pos, pos + searchText.getText().length());
-        }
+        searchedTab.codeArea.selectRange(matches.getStart(currentSearchIndex), matches.getEnd(currentSearchIndex));
 
         updateSearchResultCount();
     }
 
     private void updateSearchResultCount() {
-        if (searchIndices.isEmpty()) {
+        if (matches == null || matches.isEmpty()) {
             searchResultCount.setText("0/0");
         }
         else {
-            searchResultCount.setText((currentSearchIndex + 1) + "/" + searchIndices.size());
+            searchResultCount.setText((currentSearchIndex + 1) + "/" + matches.size());
         }
     }
 
+    boolean isSearched(TabData tabData) {
+        return searchedTab == tabData;
+    }
+
     String getSearchText() {
         return searchText.getText();
     }
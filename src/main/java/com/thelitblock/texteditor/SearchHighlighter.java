@@ -0,0 +1,158 @@
+package com.thelitblock.texteditor;
+
+import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.model.Paragraph;
+import org.fxmisc.richtext.model.PlainTextChange;
+import org.fxmisc.richtext.model.StyleSpan;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.TwoDimensional.Bias;
+import org.reactfx.Subscription;
+
+import java.time.Duration;
+import java.util.Collection;
+
+import static com.thelitblock.texteditor.IncrementalHighlighter.VIEWPORT_MARGIN;
+
+// lays the matches of a search over a tab's syntax highlighting. Only the paragraphs around the viewport are kept
+// up to date, so the cost of a search does not grow with the number of matches in the document
+public class SearchHighlighter {
+    private static final Duration VIEWPORT_DELAY = Duration.ofMillis(30);
+
+    private final CodeArea codeArea;
+    private final IncrementalHighlighter highlighter;
+    private final SearchMatches matches;
+    private final Subscription subscription;
+    private int paragraphCount;
+    // paragraphs whose highlights reflect the current matches, stale highlights may remain outside of them
+    private int windowFrom = -1;
+    private int windowTo = -1;
+
+    // onReset runs for batched changes, which the matches cannot follow, and must replace this highlighter
+    SearchHighlighter(TabData tabData, SearchMatches matches, Runnable onUpdate, Runnable onReset) {
+        this.codeArea = tabData.codeArea;
+        this.highlighter = tabData.highlighter;
+        this.matches = matches;
+        this.paragraphCount = codeArea.getParagraphs().size();
+
+        highlighter.setSearchMatches(matches);
+        subscription = codeArea.multiPlainChanges()
+                .subscribe(changes -> {
+                    if (changes.size() == 1) {
+                        onTextChange(changes.getFirst());
+                        onUpdate.run();
+                    }
+                    else {
+                        // each change is relative to the text left by the ones before it, but the area already
+                        // holds the result of the whole batch
+                        onReset.run();
+                    }
+                })
+                .and(codeArea.getVisibleParagraphs().changes()
+                        .successionEnds(VIEWPORT_DELAY)
+                        .subscribe(event -> updateWindow()));
+        updateWindow();
+    }
+
+    void dispose() {
+        subscription.unsubscribe();
+        highlighter.setSearchMatches(null);
+    }
+
+    // removes highlights left anywhere in the area, only runs of paragraphs that carry one are restyled
+    static void clearHighlights(CodeArea codeArea) {
+        int paragraphCount = codeArea.getParagraphs().size();
+        int runStart = -1;
+        for (int i = 0; i <= paragraphCount; i++) {
+            boolean highlighted = i < paragraphCount && hasHighlight(codeArea.getParagraph(i));
+            if (highlighted && runStart == -1) {
+                runStart = i;
+            }
+            else if (!highlighted && runStart != -1) {
+                int from = codeArea.getAbsolutePosition(runStart, 0);
+                int to = codeArea.getAbsolutePosition(i - 1, codeArea.getParagraphLength(i - 1));
+                codeArea.setStyleSpans(from, codeArea.getStyleSpans(from, to).mapStyles(SearchMatches::withoutHighlight));
+                runStart = -1;
+            }
+        }
+    }
+
+    private static boolean hasHighlight(Paragraph<?, String, Collection<String>> paragraph) {
+        for (StyleSpan<Collection<String>> span : paragraph.getStyleSpans()) {
+            if (span.getStyle().contains(SearchMatches.HIGHLIGHT_CLASS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void onTextChange(PlainTextChange change) {
+        SearchMatches.Range changed = matches.update(change, new DocumentSnapshot(codeArea.getContent().snapshot()));
+        int delta = codeArea.getParagraphs().size() - paragraphCount;
+        paragraphCount += delta;
+        if (windowFrom == -1) {
+            return;
+        }
+
+        int firstParagraph = codeArea.offsetToPosition(change.getPosition(), Bias.Forward).getMajor();
+        int lastRemovedParagraph = firstParagraph + countLines(change.getRemoved());
+        if (lastRemovedParagraph < windowFrom) {
+            windowFrom += delta;
+            windowTo += delta;
+        }
+        else if (firstParagraph <= windowTo) {
+            if (firstParagraph < windowFrom || lastRemovedParagraph > windowTo) {
+                // the edit crosses the window edge, the next viewport update repaints the whole window
+                windowFrom = -1;
+                windowTo = -1;
+                return;
+            }
+            windowTo += delta;
+        }
+        restyle(Math.max(changed.from(), codeArea.getAbsolutePosition(windowFrom, 0)),
+                Math.min(changed.to(), codeArea.getAbsolutePosition(windowTo, codeArea.getParagraphLength(windowTo))));
+    }
+
+    private void updateWindow() {
+        if (codeArea.getVisibleParagraphs().isEmpty()) {
+            return;
+        }
+        int from = Math.max(0, codeArea.firstVisibleParToAllParIndex() - VIEWPORT_MARGIN);
+        int to = Math.min(paragraphCount - 1, codeArea.lastVisibleParToAllParIndex() + VIEWPORT_MARGIN);
+        if (windowFrom == -1 || to < windowFrom || from > windowTo) {
+            restyleParagraphs(from, to);
+        }
+        else {
+            if (from < windowFrom) {
+                restyleParagraphs(from, windowFrom - 1);
+            }
+            if (to > windowTo) {
+                restyleParagraphs(windowTo + 1, to);
+            }
+        }
+        windowFrom = from;
+        windowTo = to;
+    }
+
+    private void restyleParagraphs(int from, int to) {
+        restyle(codeArea.getAbsolutePosition(from, 0), codeArea.getAbsolutePosition(to, codeArea.getParagraphLength(to)));
+    }
+
+    // replaces the highlights between from and to with the current matches in a single style change
+    private void restyle(int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        StyleSpans<Collection<String>> styles = codeArea.getStyleSpans(from, to).mapStyles(SearchMatches::withoutHighlight);
+        codeArea.setStyleSpans(from, matches.overlay(styles, from));
+    }
+
+    private static int countLines(String text) {
+        int lines = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+}
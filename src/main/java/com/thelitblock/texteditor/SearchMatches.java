@@ -0,0 +1,237 @@
+package com.thelitblock.texteditor;
+
+import org.fxmisc.richtext.GenericStyledArea;
+import org.fxmisc.richtext.MultiChangeBuilder;
+import org.fxmisc.richtext.model.PlainTextChange;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+// sorted, non-overlapping matches of a query. Matches never cross lines, so an edit only rescans the paragraphs
+// it touched and shifts the matches after them
+public class SearchMatches {
+    static final String HIGHLIGHT_CLASS = "search-highlight";
+    private static final Collection<String> HIGHLIGHT = Collections.singletonList(HIGHLIGHT_CLASS);
+    // paragraphs scanned between cancellation checks and progress updates of a search
+    static final int SEARCH_CHUNK = 4096;
+    // every change of a batch costs about as much as re-inserting a few thousand chars, so replacing all matches
+    // merges matches closer than this into one change that also rewrites the text between them
+    static final int REPLACE_MERGE_GAP = 2048;
+
+    private final SearchQuery query;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int count = 0;
+
+    record Range(int from, int to) {
+    }
+
+    // replaces start to end of the text as it was before any edit of the same batch
+    record Edit(int start, int end, String text) {
+    }
+
+    SearchMatches(SearchQuery query) {
+        this.query = query;
+    }
+
+    SearchQuery getQuery() {
+        return query;
+    }
+
+    int size() {
+        return count;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    int getStart(int index) {
+        return starts[index];
+    }
+
+    int getEnd(int index) {
+        return ends[index];
+    }
+
+    // index of the first match starting at or after offset, or size() if there is none
+    int indexAtOrAfter(int offset) {
+        int index = Arrays.binarySearch(starts, 0, count, offset);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    // every match of query in snapshot, progress is told how many were found after each SEARCH_CHUNK paragraphs.
+    // Returns null as soon as cancelled returns true
+    static SearchMatches search(SearchQuery query, DocumentSnapshot snapshot, BooleanSupplier cancelled,
+                                IntConsumer progress) {
+        SearchMatches found = new SearchMatches(query);
+        int paragraphCount = snapshot.getParagraphCount();
+        for (int from = 0; from < paragraphCount; from += SEARCH_CHUNK) {
+            if (cancelled.getAsBoolean()) {
+                return null;
+            }
+            found.findAll(snapshot, from, Math.min(from + SEARCH_CHUNK, paragraphCount));
+            progress.accept(found.size());
+        }
+        return found;
+    }
+
+    // appends the matches of paragraphs from (inclusive) to to (exclusive), which must follow the ones already found
+    void findAll(DocumentSnapshot snapshot, int from, int to) {
+        int paragraphStart = snapshot.getParagraphStart(from);
+        for (int i = from; i < to; i++) {
+            String paragraph = snapshot.getParagraph(i);
+            query.findAll(paragraph, paragraphStart, this);
+            paragraphStart += paragraph.length() + 1;
+        }
+    }
+
+    // returns the text range whose matches may have changed, outside of it matches were only kept or shifted
+    Range update(PlainTextChange change, DocumentSnapshot snapshot) {
+        int delta = change.getNetLength();
+        int firstParagraph = snapshot.getParagraphIndex(change.getPosition());
+        int lastParagraph = snapshot.getParagraphIndex(change.getInsertionEnd());
+        int from = snapshot.getParagraphStart(firstParagraph);
+        int to = snapshot.getParagraphStart(lastParagraph) + snapshot.getParagraph(lastParagraph).length();
+
+        SearchMatches rescanned = new SearchMatches(query);
+        rescanned.findAll(snapshot, firstParagraph, lastParagraph + 1);
+
+        // matches of the edited paragraphs are replaced, in old offsets those paragraphs ended at to - delta
+        int first = indexAtOrAfter(from);
+        int next = indexAtOrAfter(to - delta);
+        int newCount = count - (next - first) + rescanned.count;
+        if (newCount > starts.length) {
+            starts = Arrays.copyOf(starts, Math.max(newCount, starts.length * 2));
+            ends = Arrays.copyOf(ends, starts.length);
+        }
+        int shiftedFrom = first + rescanned.count;
+        System.arraycopy(starts, next, starts, shiftedFrom, count - next);
+        System.arraycopy(ends, next, ends, shiftedFrom, count - next);
+        System.arraycopy(rescanned.starts, 0, starts, first, rescanned.count);
+        System.arraycopy(rescanned.ends, 0, ends, first, rescanned.count);
+        count = newCount;
+        if (delta != 0) {
+            for (int i = shiftedFrom; i < count; i++) {
+                starts[i] += delta;
+                ends[i] += delta;
+            }
+        }
+        return new Range(from, to);
+    }
+
+    // the edits that replace every match of snapshot with replacement, with group references expanded in regex mode
+    List<Edit> replaceAll(DocumentSnapshot snapshot, String replacement) {
+        List<Edit> edits = new ArrayList<>();
+        StringBuilder replaced = new StringBuilder();
+        int changeStart = -1;
+        int changeEnd = -1;
+        int paragraph = -1;
+        int paragraphStart = 0;
+        String paragraphText = null;
+        for (int i = 0; i < count; i++) {
+            int start = starts[i];
+            String expanded = replacement;
+            if (query.isRegex()) {
+                if (paragraph == -1 || start > paragraphStart + paragraphText.length()) {
+                    paragraph = snapshot.getParagraphIndex(start);
+                    paragraphStart = snapshot.getParagraphStart(paragraph);
+                    paragraphText = snapshot.getParagraph(paragraph);
+                }
+                expanded = query.expandReplacement(paragraphText, start - paragraphStart, replacement);
+            }
+            if (changeStart != -1 && start - changeEnd > REPLACE_MERGE_GAP) {
+                edits.add(new Edit(changeStart, changeEnd, replaced.toString()));
+                replaced.setLength(0);
+                changeStart = -1;
+            }
+            if (changeStart == -1) {
+                changeStart = start;
+            }
+            else {
+                replaced.append(snapshot.subSequence(changeEnd, start));
+            }
+            replaced.append(expanded);
+            changeEnd = ends[i];
+        }
+        if (changeStart != -1) {
+            edits.add(new Edit(changeStart, changeEnd, replaced.toString()));
+        }
+        return edits;
+    }
+
+    // applies the edits of replaceAll to area as one change that undoes in a single step. The builder would shift
+    // every edit by walking all the ones before it, so the edits are shifted here as they go in instead
+    static void apply(GenericStyledArea<?, String, ?> area, List<Edit> edits) {
+        MultiChangeBuilder<?, String, ?> change = area.createMultiChange(edits.size());
+        int shift = 0;
+        for (Edit edit : edits) {
+            // positions in the text left by the edits before
+            change.replaceTextAbsolutely(edit.start() + shift, edit.end() + shift, edit.text());
+            shift += edit.text().length() - (edit.end() - edit.start());
+        }
+        change.commit();
+    }
+
+    void add(int start, int end) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    // lays the match highlight over styles, which start at the given offset of the text
+    StyleSpans<Collection<String>> overlay(StyleSpans<Collection<String>> styles, int offset) {
+        int end = offset + styles.length();
+        // matches are sorted by their ends as well, the first one ending inside the range may start before it
+        int first = Arrays.binarySearch(ends, 0, count, offset + 1);
+        first = first >= 0 ? first : -first - 1;
+        if (first == count || starts[first] >= end) {
+            return styles;
+        }
+        StyleSpansBuilder<Collection<String>> highlights = new StyleSpansBuilder<>();
+        int position = offset;
+        for (int i = first; i < count && starts[i] < end; i++) {
+            int from = Math.max(starts[i], offset);
+            int to = Math.min(ends[i], end);
+            if (from > position) {
+                highlights.add(Collections.emptyList(), from - position);
+            }
+            highlights.add(HIGHLIGHT, to - from);
+            position = to;
+        }
+        if (end > position) {
+            highlights.add(Collections.emptyList(), end - position);
+        }
+        return styles.overlay(highlights.create(), SearchMatches::withHighlight);
+    }
+
+    private static Collection<String> withHighlight(Collection<String> style, Collection<String> highlight) {
+        if (highlight.isEmpty()) {
+            return style;
+        }
+        List<String> merged = new ArrayList<>(style.size() + 1);
+        merged.addAll(style);
+        merged.add(HIGHLIGHT_CLASS);
+        return merged;
+    }
+
+    static Collection<String> withoutHighlight(Collection<String> style) {
+        if (!style.contains(HIGHLIGHT_CLASS)) {
+            return style;
+        }
+        List<String> stripped = new ArrayList<>(style);
+        stripped.remove(HIGHLIGHT_CLASS);
+        return stripped;
+    }
+}
@@ -0,0 +1,137 @@
+package com.thelitblock.texteditor;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+// the search bar options compiled into a matcher for single paragraphs. Queries never match across lines, so
+// matches of one paragraph do not depend on any other. Instances are immutable and can be shared between threads
+public class SearchQuery {
+    private final String text;
+    private final boolean matchCase;
+    private final boolean wholeWord;
+    // set in regex mode only
+    private final Pattern pattern;
+    // case-folded query and Boyer-Moore-Horspool shifts indexed by the low byte of a folded char
+    private final char[] folded;
+    private final int[] shifts = new int[256];
+
+    SearchQuery(String text, boolean matchCase, boolean wholeWord, boolean regex) throws PatternSyntaxException {
+        this.text = text;
+        this.matchCase = matchCase;
+        this.wholeWord = wholeWord;
+        if (regex) {
+            int flags = matchCase ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+            // same word chars as isWordChar, \b alone only knows ASCII letters
+            pattern = Pattern.compile(wholeWord ? "(?<![\\p{L}\\p{Nd}_])(?:" + text + ")(?![\\p{L}\\p{Nd}_])" : text, flags);
+            folded = null;
+        }
+        else {
+            pattern = null;
+            folded = new char[text.length()];
+            for (int i = 0; i < folded.length; i++) {
+                folded[i] = fold(text.charAt(i));
+            }
+            int last = folded.length - 1;
+            Arrays.fill(shifts, folded.length);
+            // later chars overwrite earlier ones with smaller shifts, so colliding chars keep the safe minimum
+            for (int i = 0; i < last; i++) {
+                shifts[folded[i] & 0xFF] = last - i;
+            }
+        }
+    }
+
+    String getText() {
+        return text;
+    }
+
+    boolean isRegex() {
+        return pattern != null;
+    }
+
+    // adds every non-overlapping match in the paragraph, offset is where the paragraph starts in the document
+    void findAll(String paragraph, int offset, SearchMatches matches) {
+        if (pattern != null) {
+            Matcher matcher = pattern.matcher(paragraph);
+            while (matcher.find()) {
+                // empty matches cannot be highlighted or replaced in a useful way
+                if (matcher.end() > matcher.start()) {
+                    matches.add(offset + matcher.start(), offset + matcher.end());
+                }
+            }
+            return;
+        }
+
+        int index = indexOf(paragraph, 0);
+        while (index != -1) {
+            if (!wholeWord || isWholeWord(paragraph, index, index + text.length())) {
+                matches.add(offset + index, offset + index + text.length());
+                index = indexOf(paragraph, index + text.length());
+            }
+            else {
+                index = indexOf(paragraph, index + 1);
+            }
+        }
+    }
+
+    // the text that replaces the match at column, with group references expanded in regex mode
+    String expandReplacement(String paragraph, int column, String replacement) {
+        if (pattern == null) {
+            return replacement;
+        }
+        Matcher matcher = pattern.matcher(paragraph);
+        if (!matcher.find(column)) {
+            return replacement;
+        }
+        StringBuilder builder = new StringBuilder();
+        try {
+            matcher.appendReplacement(builder, replacement);
+        }
+        catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            // a reference to a group that does not exist, insert the replacement as typed
+            return replacement;
+        }
+        return builder.substring(matcher.start());
+    }
+
+    private int indexOf(String paragraph, int from) {
+        if (matchCase) {
+            // String.indexOf is a vectorized intrinsic and beats any scan written in Java for exact matches
+            return paragraph.indexOf(text, from);
+        }
+        int last = folded.length - 1;
+        int limit = paragraph.length() - folded.length;
+        int i = from;
+        while (i <= limit) {
+            char c = fold(paragraph.charAt(i + last));
+            if (c == folded[last]) {
+                int j = last - 1;
+                while (j >= 0 && fold(paragraph.charAt(i + j)) == folded[j]) {
+                    j--;
+                }
+                if (j < 0) {
+                    return i;
+                }
+            }
+            i += shifts[c & 0xFF];
+        }
+        return -1;
+    }
+
+    static char fold(char c) {
+        if (c < 128) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static boolean isWholeWord(String paragraph, int start, int end) {
+        return (start == 0 || !isWordChar(paragraph.charAt(start - 1)))
+                && (end == paragraph.length() || !isWordChar(paragraph.charAt(end)));
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+}
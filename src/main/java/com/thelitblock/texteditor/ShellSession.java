@@ -0,0 +1,247 @@
+package com.thelitblock.texteditor;
+
+import javafx.application.Platform;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+// the shell behind the integrated terminal. It stays alive between commands, so cd, variables and functions carry
+// over and a command does not pay for starting a new shell. Every command is followed by a marker line on stdout and
+// on stderr, its output ends once both came back, and the one on stdout tells the exit code and current directory
+public class ShellSession {
+    private static final boolean WINDOWS = System.getProperty("os.name").toLowerCase().contains("win");
+    // starts every marker line, followed by the id of the shell that printed it
+    private static final char MARKER_START = '\u001e';
+    // marker lines hold a path, they are only broken up when they get longer than any path could be
+    private static final int MAX_MARKER_LENGTH = 8192;
+    // a stopped command that is still running after this long is killed, together with the shell
+    private static final long KILL_TIMEOUT_MILLIS = 2000;
+    // output a dying shell still has in its pipes is waited for this long before the exit is reported
+    private static final long EXIT_DRAIN_MILLIS = 500;
+
+    private final Consumer<String> output;
+    private final Consumer<String> errors;
+    private final IntConsumer finished;
+    private final Runnable exited;
+    private volatile Process process;
+    private String markerId;
+    private volatile Path directory = Path.of(System.getProperty("user.dir"));
+    private volatile boolean running = false;
+    // counts the commands, so a stop that outlives its command leaves the next one alone
+    private volatile int commandCount = 0;
+    private volatile int exitCode = 0;
+    private final AtomicInteger markersLeft = new AtomicInteger();
+
+    // output and errors get every line the shell prints, on the threads reading them. finished gets the exit code of
+    // each command and exited is told when the shell itself is gone, both on the FX thread
+    ShellSession(Consumer<String> output, Consumer<String> errors, IntConsumer finished, Runnable exited) {
+        this.output = output;
+        this.errors = errors;
+        this.finished = finished;
+        this.exited = exited;
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    // runs command in the shell, which is started first if there is none yet
+    void run(String command) throws IOException {
+        if (process == null) {
+            start();
+        }
+        commandCount++;
+        markersLeft.set(2);
+        running = true;
+        try {
+            write(WINDOWS ? windowsCommand(command) : bashCommand(command));
+        }
+        catch (IOException e) {
+            running = false;
+            throw e;
+        }
+    }
+
+    // the command is evaluated from a quoted string, so whatever it contains the marker is still printed after it
+    private String bashCommand(String command) {
+        return "eval '" + command.replace("'", "'\\''") + "'; "
+                + "printf '\\036%s %d %s\\n' " + markerId + " \"$?\" \"$PWD\"; "
+                + "printf '\\036%s\\n' " + markerId + " >&2\n";
+    }
+
+    // cmd.exe is started with delayed expansion, so !ERRORLEVEL! is read after the command ran
+    private String windowsCommand(String command) {
+        return command + " & echo " + MARKER_START + markerId + " !ERRORLEVEL! !CD!"
+                + "& 1>&2 echo " + MARKER_START + markerId + "\r\n";
+    }
+
+    // lines typed while a command runs are its input
+    void sendInput(String line) throws IOException {
+        write(line + System.lineSeparator());
+    }
+
+    private void write(String text) throws IOException {
+        OutputStream input = process.getOutputStream();
+        input.write(text.getBytes(Charset.defaultCharset()));
+        input.flush();
+    }
+
+    private void start() throws IOException {
+        ProcessBuilder builder = WINDOWS
+                ? new ProcessBuilder("cmd.exe", "/D", "/Q", "/V:ON", "/K")
+                : new ProcessBuilder("bash");
+        // a shell that died starts again where the last one was
+        if (Files.isDirectory(directory)) {
+            builder.directory(directory.toFile());
+        }
+        Process started = builder.start();
+        String id = UUID.randomUUID().toString();
+        process = started;
+        markerId = id;
+
+        Thread stdout = Thread.ofVirtual().name("terminal-stdout")
+                .start(() -> readOutput(started, started.getInputStream(), id, output, true));
+        Thread stderr = Thread.ofVirtual().name("terminal-stderr")
+                .start(() -> readOutput(started, started.getErrorStream(), id, errors, false));
+        Thread.ofVirtual().name("terminal-shell").start(() -> {
+            try {
+                int code = started.waitFor();
+                // children the shell left running in the background may keep the pipes open for much longer
+                stdout.join(EXIT_DRAIN_MILLIS);
+                stderr.join(EXIT_DRAIN_MILLIS);
+                Platform.runLater(() -> shellExited(started, code));
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    // splits the output into lines itself, so a command printing without line breaks still gets lines of at most
+    // TerminalOutput.MAX_LINE_LENGTH chars. A marker always starts a line of its own
+    private void readOutput(Process shell, InputStream stream, String id, Consumer<String> lines, boolean status) {
+        try (Reader reader = new InputStreamReader(stream, Charset.defaultCharset())) {
+            char[] buffer = new char[8192];
+            StringBuilder line = new StringBuilder();
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    char c = buffer[i];
+                    if (c == MARKER_START && !line.isEmpty()) {
+                        lines.accept(line.toString());
+                        line.setLength(0);
+                    }
+                    if (c == '\n') {
+                        if (!readMarker(shell, line, id, status)) {
+                            lines.accept(line.toString());
+                        }
+                        line.setLength(0);
+                    }
+                    else if (c != '\r') {
+                        line.append(c);
+                        boolean marker = line.charAt(0) == MARKER_START;
+                        if (line.length() == (marker ? MAX_MARKER_LENGTH : TerminalOutput.MAX_LINE_LENGTH)) {
+                            lines.accept(line.toString());
+                            line.setLength(0);
+                        }
+                    }
+                }
+            }
+            if (!line.isEmpty()) {
+                lines.accept(line.toString());
+            }
+        }
+        catch (IOException e) {
+            // the pipe closes under the reader when the shell is killed
+        }
+    }
+
+    // a line that is the marker of shell ends the output of the command on its stream, the command is done once its
+    // output on both streams ended
+    private boolean readMarker(Process shell, StringBuilder line, String id, boolean status) {
+        if (line.isEmpty() || line.charAt(0) != MARKER_START || !line.substring(1).startsWith(id)) {
+            return false;
+        }
+        if (status) {
+            String[] parts = line.substring(1 + id.length()).trim().split(" ", 2);
+            try {
+                exitCode = Integer.parseInt(parts[0]);
+            }
+            catch (NumberFormatException e) {
+                return false;
+            }
+            if (parts.length == 2) {
+                directory = Path.of(parts[1]);
+            }
+        }
+        if (markersLeft.decrementAndGet() == 0) {
+            Platform.runLater(() -> {
+                if (process == shell && running) {
+                    running = false;
+                    finished.accept(exitCode);
+                }
+            });
+        }
+        return true;
+    }
+
+    private void shellExited(Process shell, int code) {
+        if (process != shell) {
+            return;
+        }
+        process = null;
+        if (running) {
+            running = false;
+            finished.accept(code);
+        }
+        exited.run();
+    }
+
+    // stops the processes the running command started. The shell itself is only killed when the command is still
+    // running after KILL_TIMEOUT_MILLIS, a loop of shell builtins has no process of its own to stop
+    void stop() {
+        Process shell = process;
+        if (shell == null || !running) {
+            return;
+        }
+        int command = commandCount;
+        shell.descendants().forEach(ProcessHandle::destroy);
+        Thread.ofVirtual().name("terminal-kill").start(() -> {
+            long deadline = System.currentTimeMillis() + KILL_TIMEOUT_MILLIS;
+            try {
+                // the shell goes on with the rest of the command line when a process of it is stopped, so whatever
+                // it starts next is stopped as well
+                while (isRunning(shell, command) && System.currentTimeMillis() < deadline) {
+                    TimeUnit.MILLISECONDS.sleep(20);
+                    shell.descendants().forEach(ProcessHandle::destroy);
+                }
+                if (isRunning(shell, command)) {
+                    shell.descendants().forEach(ProcessHandle::destroyForcibly);
+                    shell.destroyForcibly();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    private boolean isRunning(Process shell, int command) {
+        return running && process == shell && commandCount == command;
+    }
+}
@@ -1,15 +1,63 @@
 package com.thelitblock.texteditor;
 
+import javafx.concurrent.Task;
 import org.fxmisc.richtext.CodeArea;
 
 import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 public class TabData {
     CodeArea codeArea;
+    IncrementalHighlighter highlighter;
     boolean isChanged;
+    File file;
+    Charset charset = StandardCharsets.UTF_8;
+    boolean byteOrderMark = false;
+    String lineSeparator = "\n";
+    // set instead of codeArea for files opened read-only through LargeFileView
+    LargeFileView largeFileView;
+    // bumped on every edit so a finished save can tell whether the text changed while it was running
+    long version = 0;
+    Task<FileOperations.SavedFile> saveTask;
+    boolean savePending = false;
+    // runs once a save asked for by closing the tab or leaving the editor is done
+    Runnable onSaved;
+    // why the last save failed, null once a save succeeds
+    String saveError;
+    // modification time and size of the file when it was last loaded or saved, a watch event that finds the same
+    // values on disk comes from the editor's own save
+    long diskModified;
+    long diskLength;
+    boolean reloadOffered = false;
+    // set while the file is read again after it changed on disk, the tab is not hibernated until it is done
+    boolean reloading = false;
+    // when the tab was last left, background tabs unused for long enough are hibernated
+    long lastActive = System.nanoTime();
+    // set instead of codeArea while the tab is hibernated
+    TabHibernator.Hibernated hibernated;
+    boolean hibernating = false;
 
     TabData(CodeArea codeArea) {
         this.codeArea = codeArea;
         this.isChanged = false;
     }
+
+    void rememberDiskState() {
+        diskModified = file.lastModified();
+        diskLength = file.length();
+    }
+
+    void rememberDiskState(FileOperations.SavedFile saved) {
+        diskModified = saved.lastModified();
+        diskLength = saved.length();
+    }
+
+    boolean isChangedOnDisk() {
+        return file.lastModified() != diskModified || file.length() != diskLength;
+    }
+
+    DocumentSnapshot snapshot() {
+        return new DocumentSnapshot(codeArea.getContent().snapshot());
+    }
 }
@@ -0,0 +1,179 @@
+package com.thelitblock.texteditor;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import org.fxmisc.richtext.CodeArea;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// puts tabs that were not looked at for a while to sleep. A hibernated tab keeps its text as deflated UTF-8 with the
+// caret, selection and scroll position, and drops its CodeArea with the styled document, line numbers and undo
+// history. Selecting it builds a new CodeArea from the saved text, so memory follows the tabs in use, not the open ones
+public class TabHibernator {
+    // background tabs not selected for this long are hibernated
+    static final long HIBERNATE_AFTER_SECONDS = Long.getLong("texteditor.tabs.hibernateSeconds", 300);
+    // background tabs kept awake however recently they were used, the least recently used ones beyond it hibernate
+    static final int MAX_AWAKE_TABS = Integer.getInteger("texteditor.tabs.maxAwake", 5);
+    private static final long CHECK_INTERVAL_SECONDS = 10;
+    // a plain thread rather than an FX animation, which would keep the FX pulse running all the time
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "tab-hibernator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // what is left of a hibernated tab
+    record Hibernated(byte[] text, int anchor, int caret, int topParagraph) {
+    }
+
+    private final TabPane tabPane;
+    // tells the tabs the search bar tracks edits of
+    private final Predicate<TabData> searched;
+
+    TabHibernator(TabPane tabPane, Predicate<TabData> searched) {
+        this.tabPane = tabPane;
+        this.searched = searched;
+
+        tabPane.getSelectionModel().selectedItemProperty().addListener((obs, oldTab, newTab) -> {
+            if (oldTab != null && oldTab.getUserData() instanceof TabData tabData) {
+                tabData.lastActive = System.nanoTime();
+            }
+            if (newTab != null) {
+                wake(newTab);
+            }
+            // after the switch is done, the tab that was left may be one too many to keep awake
+            Platform.runLater(this::hibernateIdleTabs);
+        });
+
+        timer.scheduleWithFixedDelay(() -> Platform.runLater(this::hibernateIdleTabs), CHECK_INTERVAL_SECONDS,
+                CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    void hibernateIdleTabs() {
+        List<Tab> awake = new ArrayList<>();
+        for (Tab tab : tabPane.getTabs()) {
+            if (canHibernate(tab)) {
+                awake.add(tab);
+            }
+        }
+        // most recently used first
+        awake.sort(Comparator.comparingLong((Tab tab) -> ((TabData) tab.getUserData()).lastActive).reversed());
+        long now = System.nanoTime();
+        for (int i = 0; i < awake.size(); i++) {
+            TabData tabData = (TabData) awake.get(i).getUserData();
+            if (i >= MAX_AWAKE_TABS || now - tabData.lastActive > HIBERNATE_AFTER_SECONDS * 1_000_000_000L) {
+                hibernate(awake.get(i), tabData);
+            }
+        }
+    }
+
+    // only editors in the background that are not being loaded, reloaded, saved or searched
+    private boolean canHibernate(Tab tab) {
+        return tab.getUserData() instanceof TabData tabData && tabData.codeArea != null && !tab.isSelected()
+                && !tabData.hibernating && !tabData.reloading && tabData.saveTask == null && tab.getGraphic() == null
+                && !searched.test(tabData);
+    }
+
+    // the text is compressed in the background from a snapshot, the tab only lets go of its editor when nothing
+    // happened to it in the meantime
+    private void hibernate(Tab tab, TabData tabData) {
+        CodeArea codeArea = tabData.codeArea;
+        DocumentSnapshot snapshot = tabData.snapshot();
+        long version = tabData.version;
+        tabData.hibernating = true;
+        Task<byte[]> task = new Task<>() {
+            @Override
+            protected byte[] call() throws IOException {
+                return compress(snapshot);
+            }
+        };
+        task.setOnSucceeded(event -> {
+            tabData.hibernating = false;
+            if (tabData.codeArea != codeArea || tabData.version != version || !canHibernate(tab)
+                    || !tabPane.getTabs().contains(tab)) {
+                return;
+            }
+            int topParagraph = codeArea.getVisibleParagraphs().isEmpty() ? 0 : codeArea.firstVisibleParToAllParIndex();
+            tabData.hibernated = new Hibernated(task.getValue(), codeArea.getAnchor(), codeArea.getCaretPosition(),
+                    topParagraph);
+            tabData.codeArea = null;
+            tabData.highlighter = null;
+            tab.setContent(null);
+            // the scene graph of a tab that is not shown is only brought up to date when it is shown again, until
+            // then its render nodes keep the editor that was removed. Emptied, that editor holds on to little
+            codeArea.clear();
+            codeArea.getUndoManager().forgetHistory();
+        });
+        task.setOnFailed(event -> {
+            tabData.hibernating = false;
+            System.out.println("Error hibernating tab " + tab.getText());
+        });
+        FileOperations.ioExecutor.execute(task);
+    }
+
+    // called as the tab is selected, so the editor is back before anything asks for it
+    void wake(Tab tab) {
+        if (!(tab.getUserData() instanceof TabData tabData) || tabData.hibernated == null) {
+            return;
+        }
+        Hibernated hibernated = tabData.hibernated;
+        String text;
+        try {
+            text = decompress(hibernated.text());
+        }
+        catch (IOException e) {
+            System.out.println("Error waking tab " + tab.getText());
+            return;
+        }
+        tabData.hibernated = null;
+        CodeArea codeArea = EditorSetup.createCodeArea(tab, text);
+        codeArea.selectRange(hibernated.anchor(), hibernated.caret());
+        codeArea.showParagraphAtTop(hibernated.topParagraph());
+        // watch events for the file were not applied while the tab was asleep
+        if (tabData.file != null) {
+            TextEditor.reloadIfChangedOnDisk(tab, tabData);
+        }
+    }
+
+    private static byte[] compress(DocumentSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(snapshot.length() / 4);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (Writer writer = new OutputStreamWriter(new DeflaterOutputStream(bytes, deflater, 1 << 16),
+                StandardCharsets.UTF_8)) {
+            snapshot.writeTo(writer, "\n");
+        }
+        finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String decompress(byte[] text) throws IOException {
+        Inflater inflater = new Inflater();
+        try (InputStream input = new InflaterInputStream(new ByteArrayInputStream(text), inflater, 1 << 16)) {
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.thelitblock.texteditor;
+
+import javafx.collections.ObservableListBase;
+import javafx.scene.Node;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MenuItem;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
+import javafx.scene.text.Text;
+import org.fxmisc.flowless.Cell;
+import org.fxmisc.flowless.VirtualFlow;
+import org.fxmisc.flowless.VirtualizedScrollPane;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// scrollback of the integrated terminal. Lines are kept in a ring buffer that drops the oldest ones past MAX_LINES
+// and only the visible ones get a node, so appending stays O(1) and memory flat however much a command prints
+public class TerminalOutput {
+    static final int MAX_LINES = Integer.getInteger("texteditor.terminal.scrollback", 10_000);
+    // longer lines are broken up before they get here, so a single line cannot outgrow the bound either
+    static final int MAX_LINE_LENGTH = 2000;
+
+    private final LineBuffer lines = new LineBuffer(MAX_LINES);
+    private final VirtualFlow<String, LineCell> flow;
+    private final VirtualizedScrollPane<VirtualFlow<String, LineCell>> scrollPane;
+
+    TerminalOutput() {
+        flow = VirtualFlow.createVertical(lines, line -> new LineCell());
+        scrollPane = new VirtualizedScrollPane<>(flow);
+        scrollPane.setId("terminalOutput");
+
+        MenuItem copyItem = new MenuItem("Copy All");
+        copyItem.setOnAction(event -> {
+            ClipboardContent content = new ClipboardContent();
+            content.putString(getText());
+            Clipboard.getSystemClipboard().setContent(content);
+        });
+        MenuItem clearItem = new MenuItem("Clear");
+        clearItem.setOnAction(event -> clear());
+        ContextMenu contextMenu = new ContextMenu(copyItem, clearItem);
+        scrollPane.setOnContextMenuRequested(event -> contextMenu.show(scrollPane, event.getScreenX(), event.getScreenY()));
+    }
+
+    Node getNode() {
+        return scrollPane;
+    }
+
+    int getLineCount() {
+        return lines.size();
+    }
+
+    void appendLine(String line) {
+        appendLines(List.of(line));
+    }
+
+    // the view keeps following the output as long as it was scrolled to the end before
+    void appendLines(List<String> added) {
+        if (added.isEmpty()) {
+            return;
+        }
+        boolean following = lines.isEmpty() || flow.visibleCells().isEmpty()
+                || flow.getLastVisibleIndex() >= lines.size() - 1;
+        lines.append(added);
+        if (following) {
+            flow.showAsLast(lines.size() - 1);
+        }
+    }
+
+    void clear() {
+        lines.clear();
+    }
+
+    String getText() {
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append('\n');
+        }
+        return text.toString();
+    }
+
+    // an ObservableList over a fixed array, appends past the capacity overwrite the oldest lines
+    private static class LineBuffer extends ObservableListBase<String> {
+        private final String[] lines;
+        private int first = 0;
+        private int size = 0;
+
+        LineBuffer(int capacity) {
+            lines = new String[capacity];
+        }
+
+        void append(List<String> added) {
+            if (added.size() > lines.length) {
+                added = added.subList(added.size() - lines.length, added.size());
+            }
+            int removedCount = Math.max(0, size + added.size() - lines.length);
+            List<String> removed = new ArrayList<>(removedCount);
+            for (int i = 0; i < removedCount; i++) {
+                removed.add(get(i));
+            }
+            first = (first + removedCount) % lines.length;
+            size -= removedCount;
+            for (String line : added) {
+                lines[(first + size) % lines.length] = line;
+                size++;
+            }
+
+            beginChange();
+            if (removedCount > 0) {
+                nextRemove(0, removed);
+            }
+            nextAdd(size - added.size(), size);
+            endChange();
+        }
+
+        @Override
+        public void clear() {
+            if (size == 0) {
+                return;
+            }
+            List<String> removed = new ArrayList<>(this);
+            Arrays.fill(lines, null);
+            first = 0;
+            size = 0;
+            beginChange();
+            nextRemove(0, removed);
+            endChange();
+        }
+
+        @Override
+        public String get(int index) {
+            return lines[(first + index) % lines.length];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private static class LineCell implements Cell<String, Text> {
+        private final Text text = new Text();
+
+        LineCell() {
+            text.setStyle("-fx-font-family: 'Menlo'; -fx-font-size: 10pt");
+        }
+
+        @Override
+        public Text getNode() {
+            return text;
+        }
+
+        @Override
+        public boolean isReusable() {
+            return true;
+        }
+
+        @Override
+        public void updateItem(String line) {
+            text.setText(line);
+        }
+    }
+}
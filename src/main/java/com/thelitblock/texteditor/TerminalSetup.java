@@ -1,42 +1,79 @@
 package com.thelitblock.texteditor;
 
-import javafx.scene.control.TextArea;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
 import javafx.scene.control.TextField;
 import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 public class TerminalSetup {
-    private TextArea terminalOutput;
+    private static final String IDLE_PROMPT = "Enter command and press Enter";
+    private static final String RUNNING_PROMPT = "Running, input goes to the command, Ctrl+C stops it";
+    // output reaches the view at most this often, however fast a command prints
+    private static final long FLUSH_INTERVAL_NANOS = 1_000_000_000L / 30;
+
+    private TerminalOutput terminalOutput;
     private TextField commandInput;
     private int historyIndex = 0;
     private final List<String> commandHistory = new ArrayList<>();
+    private final BlockingQueue<String> pendingOutput = new ArrayBlockingQueue<>(TerminalOutput.MAX_LINES);
+    private final AnimationTimer outputFlusher = new AnimationTimer() {
+        private long lastFlush = 0;
+
+        @Override
+        public void handle(long now) {
+            if (now - lastFlush < FLUSH_INTERVAL_NANOS) {
+                return;
+            }
+            lastFlush = now;
+            flushOutput();
+            if (!shell.isRunning() && pendingOutput.isEmpty()) {
+                stop();
+            }
+        }
+    };
+    private final ShellSession shell = new ShellSession(this::queueLine, line -> queueLine("ERROR: " + line),
+            this::finishCommand, this::shellExited);
+    private boolean stopped = false;
 
-    public TerminalSetup(TextArea terminalOutput, TextField commandInput) {
+    public TerminalSetup(TerminalOutput terminalOutput, TextField commandInput) {
         this.terminalOutput = terminalOutput;
         this.commandInput = commandInput;
         setupTerminal();
     }
 
     private void setupTerminal() {
-        terminalOutput.setEditable(false);
-        terminalOutput.setWrapText(true);
-
-        commandInput.setPromptText("Enter command and press Enter");
+        showIdlePrompt();
 
         commandInput.setOnAction(event -> {
             String command = commandInput.getText();
+            if (shell.isRunning()) {
+                sendInput(command);
+                return;
+            }
             executeCommand(command);
             commandHistory.add(command);
             historyIndex = commandHistory.size();
         });
 
+        // a filter, so it runs before the text field copies the (empty) selection
+        commandInput.addEventFilter(KeyEvent.KEY_PRESSED, event -> {
+            if (event.getCode() == KeyCode.C && event.isControlDown() && shell.isRunning()
+                    && commandInput.getSelectedText().isEmpty()) {
+                stopped = true;
+                shell.stop();
+                event.consume();
+            }
+        });
+
         commandInput.setOnKeyPressed(event -> {
             if (event.getCode() == KeyCode.UP) {
                 if (historyIndex > 0) {
@@ -61,38 +98,78 @@ public class TerminalSetup {
 
     public VBox createTerminalPane() {
         VBox terminalBox = new VBox(10);
-        terminalBox.getChildren().addAll(terminalOutput, commandInput);
-        VBox.setVgrow(terminalOutput, Priority.ALWAYS);
+        terminalBox.getChildren().addAll(terminalOutput.getNode(), commandInput);
+        VBox.setVgrow(terminalOutput.getNode(), Priority.ALWAYS);
         return terminalBox;
     }
 
+    // hands the command to the shell and returns right away, its output is read on threads of the shell session
     private void executeCommand(String command) {
-        terminalOutput.appendText("> " + command + "\n");
+        terminalOutput.appendLine("> " + command);
+        commandInput.clear();
         try {
-            ProcessBuilder builder;
-            if (System.getProperty("os.name").toLowerCase().contains("win")) {
-                builder = new ProcessBuilder("cmd.exe", "/c", command);
-            }
-            else {
-                builder = new ProcessBuilder("bash", "-c", command);
-            }
+            shell.run(command);
+        }
+        catch (IOException e) {
+            terminalOutput.appendLine("ERROR: " + e.getMessage());
+            return;
+        }
+        stopped = false;
+        commandInput.setPromptText(RUNNING_PROMPT);
+        outputFlusher.start();
+    }
 
-            Process process = builder.start();
+    // the queue holds as many lines as the scrollback, so when a command prints faster than the view is flushed the
+    // oldest pending lines are dropped, they would have scrolled out of the scrollback anyway
+    private void queueLine(String line) {
+        boolean wasEmpty = pendingOutput.isEmpty();
+        while (!pendingOutput.offer(line)) {
+            pendingOutput.poll();
+        }
+        // output of commands left running in the background still comes in while the terminal is idle, the flusher
+        // only stops once the queue is empty
+        if (wasEmpty && !shell.isRunning()) {
+            Platform.runLater(outputFlusher::start);
+        }
+    }
 
-            BufferedReader stdInput = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            BufferedReader stdError = new BufferedReader(new InputStreamReader(process.getErrorStream()));
+    private void finishCommand(int exitCode) {
+        flushOutput();
+        if (stopped) {
+            terminalOutput.appendLine("Stopped");
+        }
+        else if (exitCode != 0) {
+            terminalOutput.appendLine("Exited with code " + exitCode);
+        }
+        showIdlePrompt();
+    }
 
-            String s;
-            while ((s = stdInput.readLine()) != null) {
-                terminalOutput.appendText(s + "\n");
-            }
-            while ((s = stdError.readLine()) != null) {
-                terminalOutput.appendText("ERROR: " + s + "\n");
-            }
+    private void shellExited() {
+        flushOutput();
+        terminalOutput.appendLine("Shell exited, the next command starts a new one");
+        showIdlePrompt();
+    }
+
+    private void showIdlePrompt() {
+        commandInput.setPromptText(shell.getDirectory() + "  " + IDLE_PROMPT);
+    }
+
+    // lines typed while a command runs are its input
+    private void sendInput(String line) {
+        flushOutput();
+        terminalOutput.appendLine(line);
+        commandInput.clear();
+        try {
+            shell.sendInput(line);
         }
         catch (IOException e) {
-            terminalOutput.appendText("ERROR: " + e.getMessage() + "\n");
+            terminalOutput.appendLine("ERROR: " + e.getMessage());
         }
-        commandInput.clear();
+    }
+
+    private void flushOutput() {
+        List<String> lines = new ArrayList<>();
+        pendingOutput.drainTo(lines);
+        terminalOutput.appendLines(lines);
     }
 }
@@ -1,6 +1,9 @@
 package com.thelitblock.texteditor;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.input.*;
@@ -11,9 +14,11 @@ import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.stage.Window;
-import org.fxmisc.flowless.VirtualizedScrollPane;
+import javafx.util.Duration;
 import org.fxmisc.richtext.CodeArea;
 import java.io.*;
+import java.nio.charset.CharacterCodingException;
+import java.nio.file.Path;
 import java.util.*;
 import javafx.scene.layout.BorderPane;
 
@@ -24,17 +29,18 @@ public class TextEditor extends Application {
     static HBox searchBar = new HBox();
     private TextField searchText;
     static MenuBar menuBar;
-    static File currentFile = null;
 
     private MenuEventHandler menuEventHandler;
     //search bar
     private SearchBarSetup searchBarSetup;
     private MenuBarSetup menuBarSetup;
     // Terminal stuff
-    private static TextArea terminalOutput;
+    private static TerminalOutput terminalOutput;
     private static TextField commandInput;
 
     private static FolderSetup folderSetup;
+    private static FindInFilesSetup findInFilesSetup;
+    private static QuickOpenSetup quickOpenSetup;
     //find and replace
     private Label searchResultCount;
     private int currentSearchIndex = -1;
@@ -42,8 +48,9 @@ public class TextEditor extends Application {
 
     private static EditorSetup editorSetup;
     //folder
-    private TreeView<String> folderTreeView;
+    private static TreeView<String> folderTreeView;
     private static TreeItem<String> rootItem;
+    private static BorderPane mainLayout;
 
     public static Window getPrimaryStage() {
         return primaryStage;
@@ -52,44 +59,66 @@ public class TextEditor extends Application {
     @Override
     public void start(Stage primaryStage) {
         try {
+            long start = System.nanoTime();
+            Timing.log("startup: launch to start", Timing.launchNanos());
             TextEditor.primaryStage = primaryStage;
 
-            terminalOutput = new TextArea();
+            terminalOutput = new TerminalOutput();
             commandInput = new TextField();
+            long phase = Timing.logPhase("startup: terminal", start);
 
             rootItem = new TreeItem<>("Root");
-            folderTreeView = new TreeView<>(rootItem);
+            // empty until a folder is opened, which is also when the folder setup behind it is done
+            folderTreeView = new TreeView<>();
 
             menuBarSetup = new MenuBarSetup(tabPane);
             menuBar = MenuBarSetup.getMenuBar();
+            phase = Timing.logPhase("startup: menus", phase);
 
-            folderSetup = new FolderSetup(searchBar, folderTreeView, rootItem);
-            folderSetup.setupFolderTreeView();
-
-            searchBarSetup = new SearchBarSetup(searchBar, searchText, searchResultCount, tabPane);
+            // the search bar, the folder tree, find in files and quick open are not on screen at first and are set
+            // up the first time they are used
             TerminalSetup terminalSetup = new TerminalSetup(terminalOutput, commandInput);
-            editorSetup = new EditorSetup(menuBar, searchBar, tabPane, terminalSetup, searchBarSetup);
+            editorSetup = new EditorSetup(menuBar, searchBar, tabPane, terminalSetup,
+                    tabData -> searchBarSetup != null && searchBarSetup.isSearched(tabData));
+            phase = Timing.logPhase("startup: editor", phase);
 
             setupUI();
+            phase = Timing.logPhase("startup: scene", phase);
 
             primaryStage.setScene(scene);
             primaryStage.setTitle("TextEditor");
             primaryStage.show();
+            // typing goes to the editor right away
+            getCurrentCodeArea().requestFocus();
+            Timing.log("startup: show", phase);
+            Timing.logAfterLayout("startup: start to first frame", start);
+            Timing.logAfterLayout("startup: launch to first frame", Timing.launchNanos());
+            if (Boolean.getBoolean("texteditor.exitAfterStartup")) {
+                exitAfterStartup();
+            }
         }
         catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    // a run of the appcds build profile, which only has to load the classes a startup needs. The pool of editors is
+    // built in the meantime, so its classes are in the archive as well
+    private static void exitAfterStartup() {
+        PauseTransition delay = new PauseTransition(Duration.seconds(2));
+        delay.setOnFinished(event -> Platform.exit());
+        delay.play();
+    }
+
     private void setupUI() {
 
-        BorderPane mainLayout = new BorderPane();
-        mainLayout.setLeft(folderSetup.getFolderTreeView());
+        mainLayout = new BorderPane();
+        mainLayout.setLeft(folderTreeView);
         mainLayout.setCenter(tabPane);
 
         VBox bottomLayout = new VBox();
-        bottomLayout.getChildren().addAll(terminalOutput, commandInput);
-        VBox.setVgrow(terminalOutput, Priority.ALWAYS);
+        bottomLayout.getChildren().addAll(terminalOutput.getNode(), commandInput);
+        VBox.setVgrow(terminalOutput.getNode(), Priority.ALWAYS);
         VBox.setVgrow(commandInput, Priority.NEVER);
 
         BorderPane rootLayout = new BorderPane();
@@ -104,17 +133,25 @@ public class TextEditor extends Application {
 
     private void setupScene() {
         scene.addEventFilter(KeyEvent.KEY_PRESSED, event -> {
-            if (event.getCode() == KeyCode.F && event.isControlDown()) {
-                if (searchBar.isVisible()) {
+            if (event.getCode() == KeyCode.F && event.isControlDown() && event.isShiftDown()) {
+                toggleFindInFiles();
+                event.consume();
+            }
+            else if (event.getCode() == KeyCode.P && event.isControlDown()) {
+                toggleQuickOpen();
+                event.consume();
+            }
+            else if (event.getCode() == KeyCode.F && event.isControlDown()) {
+                if (isSearchBarShowing()) {
                     searchBarSetup.hideSearchBar();
                 }
                 else {
-                    searchBarSetup.showSearchBar();
+                    getSearchBarSetup().showSearchBar();
                 }
                 event.consume();
             }
             else if (event.getCode() == KeyCode.ENTER) {
-                if (searchBar.isVisible()) {
+                if (isSearchBarShowing()) {
                     searchBarSetup.navigateSearchResults(1);
                     event.consume();
                 }
@@ -130,34 +167,222 @@ public class TextEditor extends Application {
         }
     }
 
+    private boolean isSearchBarShowing() {
+        return searchBarSetup != null && searchBar.isVisible();
+    }
+
+    private SearchBarSetup getSearchBarSetup() {
+        if (searchBarSetup == null) {
+            Button openDirButton = new Button("Open Folder");
+            openDirButton.setOnAction(e -> openFolder());
+            searchBar.getChildren().add(openDirButton);
+            searchBarSetup = new SearchBarSetup(searchBar, searchText, searchResultCount, tabPane);
+        }
+        return searchBarSetup;
+    }
+
+    static FolderSetup getFolderSetup() {
+        if (folderSetup == null) {
+            folderSetup = new FolderSetup(folderTreeView, rootItem);
+            folderSetup.setupFolderTreeView();
+        }
+        return folderSetup;
+    }
+
     static void openFolder() {
         DirectoryChooser directoryChooser = new DirectoryChooser();
         File selectedDirectory = directoryChooser.showDialog(primaryStage);
 
         if (selectedDirectory != null) {
-            rootItem.getChildren().clear();
-            folderSetup.createTree(selectedDirectory, rootItem);
+            getFolderSetup().openFolder(selectedDirectory);
+        }
+    }
+
+    static void toggleFindInFiles() {
+        if (findInFilesSetup == null) {
+            findInFilesSetup = new FindInFilesSetup(getFolderSetup());
+            mainLayout.setRight(findInFilesSetup.getPanel());
+        }
+        if (findInFilesSetup.isShowing()) {
+            findInFilesSetup.hidePanel();
+        }
+        else {
+            findInFilesSetup.showPanel();
+        }
+    }
+
+    static void toggleQuickOpen() {
+        if (quickOpenSetup == null) {
+            quickOpenSetup = new QuickOpenSetup(getFolderSetup());
+        }
+        if (quickOpenSetup.isShowing()) {
+            quickOpenSetup.hide();
+        }
+        else {
+            quickOpenSetup.show(primaryStage);
         }
     }
 
     static void openFile(File file) {
-        currentFile = file;
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            CodeArea codeArea = getCurrentCodeArea();
-            TabData tabData = getCurrentTabData();
-            if (codeArea != null && tabData != null) {
-                codeArea.clear();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    codeArea.appendText(line + "\n");
-                }
-                tabData.isChanged = false;
-                Tab currentTab = tabPane.getSelectionModel().getSelectedItem();
-                currentTab.setText(file.getName());
+        if (file.length() > LargeFileView.LARGE_FILE_THRESHOLD) {
+            openFileInNewTab(file);
+            return;
+        }
+        // a large file tab has no editor to load into
+        Tab currentTab = tabPane.getSelectionModel().getSelectedItem();
+        if (currentTab != null && currentTab.getUserData() instanceof TabData tabData && tabData.codeArea != null) {
+            loadFile(file, currentTab);
+        }
+        else {
+            openFileInNewTab(file);
+        }
+    }
+
+    static void loadFile(File file, Tab tab) {
+        loadFile(file, tab, () -> {
+        });
+    }
+
+    static void loadFile(File file, Tab tab, Runnable onLoaded) {
+        TabData tabData = (TabData) tab.getUserData();
+        Task<FileOperations.LoadedFile> task = FileOperations.createLoadTask(file);
+
+        ProgressIndicator progressIndicator = new ProgressIndicator();
+        progressIndicator.setPrefSize(16, 16);
+        progressIndicator.progressProperty().bind(task.progressProperty());
+        String title = tab.getText();
+        tab.setGraphic(progressIndicator);
+        tab.setText(file.getName());
+
+        task.setOnSucceeded(event -> {
+            EditorSetup.wake(tab);
+            if (tabData.codeArea == null) {
+                tab.setText(title);
+                tab.setGraphic(null);
+                System.out.println("Error loading " + file.getName() + ", the tab has no editor");
+                return;
             }
+            FileOperations.LoadedFile loadedFile = task.getValue();
+            tabData.codeArea.replaceText(loadedFile.text());
+            tabData.codeArea.moveTo(0);
+            tabData.codeArea.requestFollowCaret();
+            tabData.file = file;
+            tabData.charset = loadedFile.charset();
+            tabData.byteOrderMark = loadedFile.byteOrderMark();
+            tabData.lineSeparator = loadedFile.lineSeparator();
+            tabData.isChanged = false;
+            tabData.rememberDiskState();
+            watchFile(file);
+            tab.setText(file.getName());
+            tab.setGraphic(null);
+            onLoaded.run();
+        });
+        task.setOnFailed(event -> {
+            tab.setText(title);
+            tab.setGraphic(null);
+            System.out.println("Error reading file");
+        });
+        FileOperations.ioExecutor.execute(task);
+    }
+
+    // reads the file of a tab again after it was changed outside the editor, keeping the caret where it was
+    private static void reloadTab(Tab tab, TabData tabData) {
+        // a hibernated tab checks its file as it wakes, with the disk state forgotten it finds the file changed
+        if (tabData.codeArea == null) {
+            tabData.diskModified = 0;
+            return;
         }
-        catch (IOException e) {
+        File file = tabData.file;
+        Task<FileOperations.LoadedFile> task = FileOperations.createLoadTask(file);
+        tabData.reloading = true;
+        task.setOnSucceeded(event -> {
+            tabData.reloading = false;
+            // edits made while the file was read win over the reload
+            if (tabData.isChanged || !file.equals(tabData.file)) {
+                return;
+            }
+            FileOperations.LoadedFile loadedFile = task.getValue();
+            CodeArea codeArea = tabData.codeArea;
+            int caret = codeArea.getCaretPosition();
+            codeArea.replaceText(loadedFile.text());
+            codeArea.moveTo(Math.min(caret, codeArea.getLength()));
+            tabData.charset = loadedFile.charset();
+            tabData.byteOrderMark = loadedFile.byteOrderMark();
+            tabData.lineSeparator = loadedFile.lineSeparator();
+            tabData.isChanged = false;
+            tabData.rememberDiskState();
+            tab.setText(file.getName());
+        });
+        task.setOnFailed(event -> {
+            tabData.reloading = false;
             System.out.println("Error reading file");
+        });
+        FileOperations.ioExecutor.execute(task);
+    }
+
+    // reloads the tabs whose file changed outside the editor, tabs with unsaved changes are only reloaded when the
+    // user agrees
+    static void reloadChangedFiles(FolderWatcher.Changes changes) {
+        for (Tab tab : tabPane.getTabs()) {
+            if (!(tab.getUserData() instanceof TabData tabData) || tabData.codeArea == null || tabData.file == null) {
+                continue;
+            }
+            Path path = tabData.file.toPath().toAbsolutePath().normalize();
+            if (!changes.files().contains(path) && !changes.overflowed().contains(path.getParent())) {
+                continue;
+            }
+            reloadIfChangedOnDisk(tab, tabData);
+        }
+    }
+
+    static void reloadIfChangedOnDisk(Tab tab, TabData tabData) {
+        // deleted files keep their text, and events of the editor's own saves find the file as it was saved
+        if (tabData.saveTask != null || !tabData.file.isFile() || !tabData.isChangedOnDisk()) {
+            return;
+        }
+        tabData.rememberDiskState();
+        if (!tabData.isChanged) {
+            reloadTab(tab, tabData);
+        }
+        else if (!tabData.reloadOffered) {
+            offerReload(tab, tabData);
+        }
+    }
+
+    private static void offerReload(Tab tab, TabData tabData) {
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("File Changed");
+        alert.setHeaderText(tabData.file.getName() + " was changed on disk.");
+        alert.setContentText("Do you want to reload it and lose your unsaved changes?");
+
+        ButtonType btnReload = new ButtonType("Reload");
+        ButtonType btnKeep = new ButtonType("Keep Changes", ButtonBar.ButtonData.CANCEL_CLOSE);
+        alert.getButtonTypes().setAll(btnReload, btnKeep);
+
+        // not modal, so a batch of changes never waits for an answer
+        tabData.reloadOffered = true;
+        alert.setOnHidden(event -> {
+            tabData.reloadOffered = false;
+            if (alert.getResult() == btnReload) {
+                tabData.isChanged = false;
+                reloadTab(tab, tabData);
+            }
+        });
+        alert.show();
+    }
+
+    private static void watchFile(File file) {
+        Path directory = file.toPath().toAbsolutePath().getParent();
+        if (directory != null) {
+            getFolderSetup().getWatcher().watch(directory);
+        }
+    }
+
+    static void watchOpenFiles() {
+        for (Tab tab : tabPane.getTabs()) {
+            if (tab.getUserData() instanceof TabData tabData && tabData.largeFileView == null && tabData.file != null) {
+                watchFile(tabData.file);
+            }
         }
     }
 
@@ -175,26 +400,52 @@ public class TextEditor extends Application {
     }
 
     public static void openFileInNewTab(File file) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            CodeArea codeArea = new CodeArea();
-            StringBuilder content = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                content.append(line).append("\n");
+        if (file.length() > LargeFileView.LARGE_FILE_THRESHOLD) {
+            try {
+                Tab newTab = EditorSetup.createLargeFileTab(file);
+                tabPane.getTabs().add(tabPane.getTabs().size() - 1, newTab);
+                tabPane.getSelectionModel().select(newTab);
             }
-            codeArea.replaceText(content.toString());
+            catch (IOException e) {
+                System.out.println("Error reading file");
+            }
+            return;
+        }
+        Tab newTab = EditorSetup.createNewTab(file.getName());
+        tabPane.getTabs().add(tabPane.getTabs().size() - 1, newTab);
+        tabPane.getSelectionModel().select(newTab);
+        loadFile(file, newTab);
+    }
 
-            String fileName = file.getName();
-            Tab newTab = EditorSetup.createNewTab(fileName);
-            ((VirtualizedScrollPane<CodeArea>) newTab.getContent()).getContent().replaceText(content.toString());
-            TabData tabData = new TabData(codeArea);
-            newTab.setUserData(tabData);
-            tabPane.getTabs().add(tabPane.getTabs().size() - 1, newTab);
-            tabPane.getSelectionModel().select(newTab);
+    // switches to the tab of the file, or opens it, and selects length chars at the given line and column
+    static void openFileAt(File file, int line, int column, int length) {
+        for (Tab tab : tabPane.getTabs()) {
+            if (tab.getUserData() instanceof TabData tabData && tabData.largeFileView == null && file.equals(tabData.file)) {
+                // selecting a hibernated tab wakes it up
+                tabPane.getSelectionModel().select(tab);
+                selectInLine(tabData.codeArea, line, column, length);
+                return;
+            }
         }
-        catch (IOException e) {
-            e.printStackTrace();
+        if (file.length() > LargeFileView.LARGE_FILE_THRESHOLD) {
+            openFileInNewTab(file);
+            return;
         }
+        Tab newTab = EditorSetup.createNewTab(file.getName());
+        tabPane.getTabs().add(tabPane.getTabs().size() - 1, newTab);
+        tabPane.getSelectionModel().select(newTab);
+        CodeArea codeArea = ((TabData) newTab.getUserData()).codeArea;
+        loadFile(file, newTab, () -> selectInLine(codeArea, line, column, length));
+    }
+
+    private static void selectInLine(CodeArea codeArea, int line, int column, int length) {
+        if (line >= codeArea.getParagraphs().size()) {
+            return;
+        }
+        int start = codeArea.getAbsolutePosition(line, Math.min(column, codeArea.getParagraphLength(line)));
+        codeArea.selectRange(start, Math.min(start + length, codeArea.getLength()));
+        codeArea.requestFollowCaret();
+        codeArea.requestFocus();
     }
 
     public static void displayFile() {
@@ -203,24 +454,7 @@ public class TextEditor extends Application {
         File file = fileChooser.showOpenDialog(primaryStage);
 
         if (file != null) {
-            currentFile = file;
-            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                CodeArea codeArea = getCurrentCodeArea();
-                TabData tabData = getCurrentTabData();
-                if (codeArea != null && tabData != null) {
-                    codeArea.clear();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        codeArea.appendText(line + "\n");
-                    }
-                    tabData.isChanged = false;
-                    Tab currentTab = tabPane.getSelectionModel().getSelectedItem();
-                    currentTab.setText(file.getName());
-                }
-            }
-            catch (IOException e) {
-                System.out.println("Error reading file");
-            }
+            openFile(file);
         }
         else {
             System.out.println("No file selected");
@@ -237,51 +471,137 @@ public class TextEditor extends Application {
     }
 
     public static void saveFile() {
-        CodeArea codeArea = getCurrentCodeArea();
-        TabData tabData = getCurrentTabData();
-        if (codeArea != null && tabData != null) {
-            if (currentFile == null || currentFile.getName().equals("Text Editor") || currentFile.getName().equals("Untitled")) {
-                saveAsFile();
-            }
-            else {
-                try (BufferedWriter writer = new BufferedWriter(new FileWriter(currentFile))) {
-                    writer.write(codeArea.getText());
-                    primaryStage.setTitle(currentFile.getName());
-                    tabData.isChanged = false;
-                    Tab currentTab = tabPane.getSelectionModel().getSelectedItem();
-                    currentTab.setText(currentFile.getName());
-                }
-                catch (IOException e) {
-                    System.out.println("Error writing file");
-                }
-            }
+        saveFile(null);
+    }
+
+    // saves the selected tab, onSaved runs once all of its text is on disk
+    static void saveFile(Runnable onSaved) {
+        Tab tab = tabPane.getSelectionModel().getSelectedItem();
+        if (tab != null && tab.getUserData() instanceof TabData tabData && tabData.largeFileView == null) {
+            saveTab(tab, onSaved);
         }
     }
 
     public static void saveAsFile() {
+        Tab tab = tabPane.getSelectionModel().getSelectedItem();
+        if (tab != null && tab.getUserData() instanceof TabData tabData && tabData.largeFileView == null) {
+            saveTabAs(tab, null);
+        }
+    }
+
+    // saves tab to its own file, asking for one when it has none yet
+    static void saveTab(Tab tab, Runnable onSaved) {
+        File file = ((TabData) tab.getUserData()).file;
+        if (file == null) {
+            saveTabAs(tab, onSaved);
+        }
+        else {
+            saveTab(tab, file, onSaved);
+        }
+    }
+
+    private static void saveTabAs(Tab tab, Runnable onSaved) {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Save File");
         File file = fileChooser.showSaveDialog(primaryStage);
-
         if (file != null) {
-            CodeArea codeArea = getCurrentCodeArea();
-            TabData tabData = getCurrentTabData();
-            if (codeArea != null && tabData != null) {
-                try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-                    writer.write(codeArea.getText());
-                    primaryStage.setTitle(file.getName());
-                    currentFile = file;
+            saveTab(tab, file, onSaved);
+        }
+        else {
+            System.out.println("No file selected");
+        }
+    }
+
+    // writes a snapshot of the tab in the background, a save requested while one is running is coalesced into a
+    // single follow-up save of the latest text. onSaved runs once the tab's text is on disk, it is dropped when the
+    // save fails
+    static void saveTab(Tab tab, File file, Runnable onSaved) {
+        TabData tabData = (TabData) tab.getUserData();
+        // a hibernated tab is saved from an editor again
+        EditorSetup.wake(tab);
+        if (tabData.codeArea == null) {
+            System.out.println("Error saving tab " + tab.getText());
+            return;
+        }
+        tabData.file = file;
+        if (onSaved != null) {
+            Runnable previous = tabData.onSaved;
+            tabData.onSaved = previous == null ? onSaved : () -> {
+                previous.run();
+                onSaved.run();
+            };
+        }
+        if (tabData.saveTask != null) {
+            tabData.savePending = true;
+            return;
+        }
+
+        long savedVersion = tabData.version;
+        Task<FileOperations.SavedFile> task = FileOperations.createSaveTask(tabData.snapshot(), file, tabData.charset,
+                tabData.byteOrderMark, tabData.lineSeparator);
+        tabData.saveTask = task;
+
+        ProgressIndicator progressIndicator = new ProgressIndicator();
+        progressIndicator.setPrefSize(16, 16);
+        progressIndicator.progressProperty().bind(task.progressProperty());
+        tab.setGraphic(progressIndicator);
+
+        task.setOnSucceeded(event -> {
+            watchFile(file);
+            if (folderSetup != null && folderSetup.getIndex() != null) {
+                folderSetup.getIndex().fileChanged(file.toPath());
+            }
+            // a load or Save As may have pointed the tab at another file while this one was written
+            if (file.equals(tabData.file)) {
+                primaryStage.setTitle(file.getName());
+                tabData.rememberDiskState(task.getValue());
+                tabData.saveError = null;
+                tab.setTooltip(null);
+                if (tabData.version == savedVersion) {
                     tabData.isChanged = false;
-                    Tab currentTab = tabPane.getSelectionModel().getSelectedItem();
-                    currentTab.setText(file.getName());
-                }
-                catch (IOException e) {
-                    System.out.println("Error writing file");
+                    tab.setText(file.getName());
                 }
             }
+            finishSave(tab, tabData);
+        });
+        task.setOnFailed(event -> {
+            System.out.println("Error writing file");
+            String error = describeSaveError(task.getException(), tabData);
+            tabData.onSaved = null;
+            if (file.equals(tabData.file)) {
+                tabData.saveError = error;
+                tab.setTooltip(new Tooltip("Not saved: " + error));
+            }
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Save Failed");
+            alert.setHeaderText("Could not save " + file.getName());
+            alert.setContentText(error);
+            alert.show();
+            finishSave(tab, tabData);
+        });
+        FileOperations.ioExecutor.execute(task);
+    }
+
+    private static String describeSaveError(Throwable error, TabData tabData) {
+        if (error instanceof CharacterCodingException) {
+            return "The text has characters that cannot be written as " + tabData.charset.name() + ".";
         }
-        else {
-            System.out.println("No file selected");
+        return error == null || error.getMessage() == null ? "The file could not be written." : error.toString();
+    }
+
+    private static void finishSave(Tab tab, TabData tabData) {
+        tabData.saveTask = null;
+        tab.setGraphic(null);
+        if (tabData.savePending) {
+            tabData.savePending = false;
+            saveTab(tab, tabData.file, null);
+            return;
+        }
+        Runnable onSaved = tabData.onSaved;
+        tabData.onSaved = null;
+        // edits made while the last save ran are not on disk yet
+        if (onSaved != null && !tabData.isChanged) {
+            onSaved.run();
         }
     }
 
@@ -333,7 +653,7 @@ public class TextEditor extends Application {
         scene.getStylesheets().add(Objects.requireNonNull(TextEditor.class.getResource("DarkTheme.css")).toExternalForm());
     }
 
-    public static TextArea getTerminalOutput() {
+    public static TerminalOutput getTerminalOutput() {
         return terminalOutput;
     }
 
@@ -0,0 +1,55 @@
+package com.thelitblock.texteditor;
+
+import javafx.application.Platform;
+import javafx.scene.Scene;
+
+import java.time.Instant;
+
+// opt-in timing of user-facing latencies, printed when the editor runs with -Dtexteditor.timing=true
+public class Timing {
+    static final boolean ENABLED = Boolean.getBoolean("texteditor.timing");
+
+    static void log(String label, long startNanos) {
+        if (ENABLED) {
+            System.out.printf("[timing] %s: %.1f ms%n", label, (System.nanoTime() - startNanos) / 1e6);
+        }
+    }
+
+    // logs the phase that began at startNanos and returns when the next one begins
+    static long logPhase(String label, long startNanos) {
+        log(label, startNanos);
+        return System.nanoTime();
+    }
+
+    // the moment the process started on the nanoTime clock, to the precision the system keeps it at. Startup times
+    // from here include the JVM and the FX toolkit coming up
+    static long launchNanos() {
+        Instant launched = ENABLED ? ProcessHandle.current().info().startInstant().orElse(null) : null;
+        if (launched == null) {
+            return System.nanoTime();
+        }
+        return System.nanoTime() - (System.currentTimeMillis() - launched.toEpochMilli()) * 1_000_000L;
+    }
+
+    // logs once the next layout pass of the editor's scene is done, that is when a change is ready to be drawn
+    static void logAfterLayout(String label, long startNanos) {
+        Scene scene = TextEditor.scene;
+        if (!ENABLED || scene == null) {
+            log(label, startNanos);
+            return;
+        }
+        scene.addPostLayoutPulseListener(new Runnable() {
+            private boolean logged = false;
+
+            @Override
+            public void run() {
+                if (!logged) {
+                    logged = true;
+                    log(label, startNanos);
+                    // the scene is still walking its listeners
+                    Platform.runLater(() -> scene.removePostLayoutPulseListener(this));
+                }
+            }
+        });
+    }
+}
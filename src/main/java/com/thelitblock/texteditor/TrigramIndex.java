@@ -0,0 +1,788 @@
+package com.thelitblock.texteditor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+// trigram index of the files below a workspace root, used to find the files that can contain a query before any of
+// them is read. Trigrams are case-folded and packed into 21 bits, seven per char, so non-ASCII chars share codes with
+// others. Collisions only add candidates, every candidate is searched anyway.
+// Files get a new id whenever they are indexed again and posting lists only ever grow at the end, so they are stored
+// as delta-encoded varints. Ids of changed and deleted files are marked dead and compacted away once they dominate.
+// Every folder the index walks is handed to the folder watcher, whose events keep the index current. When a folder
+// cannot be watched, the files are stat-ed again before each search instead.
+public class TrigramIndex {
+    private static final int MAGIC = 0x54524749;
+    private static final int FORMAT_VERSION = 1;
+    private static final int TRIGRAM_COUNT = 1 << 21;
+    // larger files are not indexed and are a candidate for every query, FileSearch.readText does not read them whole
+    private static final long MAX_INDEXED_SIZE = FileSearch.CHUNK_SIZE;
+    // files whose trigrams are collected in parallel before they are added in id order
+    private static final int BATCH_SIZE = 256;
+    private static final long SAVE_DELAY_SECONDS = 5;
+    private static final Pattern COMMENTS_FLAG = Pattern.compile("\\(\\?[a-zA-Z-]*x");
+    private static final Path CACHE_DIRECTORY = Path.of(System.getProperty("texteditor.cacheDir",
+            System.getProperty("user.home") + "/.cache/texteditor"), "index");
+
+    private static final ScheduledExecutorService indexer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "trigram-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // per-worker scratch set of the trigrams already seen in the current file
+    private static final ThreadLocal<long[]> seenTrigrams = ThreadLocal.withInitial(() -> new long[TRIGRAM_COUNT / 64]);
+
+    private final Path root;
+    private final Path indexFile;
+    private final FolderWatcher watcher;
+    // written on the indexer thread only, which takes the write lock for every change
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<String> paths = new ArrayList<>();
+    private long[] sizes = new long[1024];
+    private long[] modifiedTimes = new long[1024];
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final BitSet dead = new BitSet();
+    private final BitSet unindexed = new BitSet();
+    private Posting[] postings = new Posting[TRIGRAM_COUNT];
+    private boolean changed = false;
+    private boolean saveScheduled = false;
+    private volatile boolean ready = false;
+    // bumped whenever a file is added to the index or dropped from it, not when a file is indexed again
+    private volatile int fileListVersion = 0;
+    // false once a folder of the index could not be watched, changes in it are only found by stat-ing the files
+    private volatile boolean watchingAll = true;
+    // whether every folder of the refresh that is running could be watched so far
+    private boolean refreshWatched;
+    private volatile boolean closed = false;
+
+    private static final class Posting {
+        private byte[] bytes = new byte[8];
+        private int length = 0;
+        private int lastId = -1;
+
+        void add(int id) {
+            if (length + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            int delta = id - lastId;
+            lastId = id;
+            while (delta >= 0x80) {
+                bytes[length++] = (byte) (delta | 0x80);
+                delta >>>= 7;
+            }
+            bytes[length++] = (byte) delta;
+        }
+
+        void addTo(BitSet ids) {
+            int id = -1;
+            int i = 0;
+            while (i < length) {
+                int delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[i++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                id += delta;
+                ids.set(id);
+            }
+        }
+    }
+
+    private TrigramIndex(Path root, FolderWatcher watcher) {
+        this.root = root;
+        this.indexFile = CACHE_DIRECTORY.resolve(cacheName(root));
+        this.watcher = watcher;
+    }
+
+    // loads the index saved for root, if any, and brings it up to date in the background. Every folder walked is
+    // watched with watcher
+    static TrigramIndex open(Path root, FolderWatcher watcher) {
+        TrigramIndex index = new TrigramIndex(root.toAbsolutePath().normalize(), watcher);
+        indexer.execute(() -> {
+            try {
+                index.load();
+                index.refresh();
+                index.ready = true;
+                index.save();
+            }
+            catch (IOException e) {
+                System.out.println("Error indexing " + root);
+            }
+        });
+        return index;
+    }
+
+    void close() {
+        closed = true;
+        indexer.execute(() -> {
+            try {
+                save();
+            }
+            catch (IOException e) {
+                System.out.println("Error saving index of " + root);
+            }
+        });
+    }
+
+    // re-indexes a file that was written, created or deleted
+    void fileChanged(Path file) {
+        filesChanged(List.of(file));
+    }
+
+    // re-indexes files and folders that were written, created or deleted. A created folder is indexed with everything
+    // in it, a deleted one is dropped with everything that was in it
+    void filesChanged(Collection<Path> changedFiles) {
+        List<Path> changed = new ArrayList<>(changedFiles.size());
+        for (Path file : changedFiles) {
+            Path path = file.toAbsolutePath().normalize();
+            if (path.startsWith(root) && !path.equals(root)) {
+                changed.add(path);
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        indexer.execute(() -> {
+            if (closed) {
+                return;
+            }
+            Map<Path, IgnoreRules> ignoreRules = new HashMap<>();
+            List<Path> files = new ArrayList<>();
+            List<BasicFileAttributes> attributes = new ArrayList<>();
+            for (Path path : changed) {
+                try {
+                    IgnoreRules rules = IgnoreRules.forPath(root, path.getParent(), ignoreRules);
+                    BasicFileAttributes fileAttributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    if (rules == null || rules.isIgnored(path, fileAttributes.isDirectory())) {
+                        removeFiles(path);
+                    }
+                    else if (fileAttributes.isDirectory()) {
+                        IgnoreRules.walk(path, rules.forDirectory(path), () -> closed, this::watch,
+                                (child, childAttributes) -> {
+                                    files.add(child);
+                                    attributes.add(childAttributes);
+                                });
+                    }
+                    else if (fileAttributes.isRegularFile()) {
+                        files.add(path);
+                        attributes.add(fileAttributes);
+                    }
+                }
+                catch (NoSuchFileException e) {
+                    removeFiles(path);
+                }
+                catch (IOException e) {
+                    System.out.println("Error indexing " + path);
+                }
+            }
+            for (int i = 0; i < files.size(); i += BATCH_SIZE) {
+                int end = Math.min(i + BATCH_SIZE, files.size());
+                indexFiles(files.subList(i, end), attributes.subList(i, end));
+            }
+            scheduleSave();
+        });
+    }
+
+    boolean isReady() {
+        return ready;
+    }
+
+    boolean isWatchingAll() {
+        return watchingAll;
+    }
+
+    // when a folder could not be watched, stats every file again and waits until the changed ones are indexed, so a
+    // search does not miss changes the watcher never saw. Not called on the FX thread
+    void catchUp() {
+        if (!ready || watchingAll || closed) {
+            return;
+        }
+        Future<?> refreshed = indexer.submit(() -> {
+            refresh();
+            scheduleSave();
+            return null;
+        });
+        try {
+            refreshed.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            System.out.println("Error indexing " + root);
+        }
+    }
+
+    // folders are watched before they are listed, so nothing created in them afterwards goes unnoticed
+    private void watch(Path directory) {
+        if (!closed && !watcher.watch(directory)) {
+            refreshWatched = false;
+            watchingAll = false;
+        }
+    }
+
+    int getFileListVersion() {
+        return fileListVersion;
+    }
+
+    // paths of the files in the index relative to its root, in index order
+    List<String> getPaths() {
+        lock.readLock().lock();
+        try {
+            List<String> live = new ArrayList<>(ids.size());
+            for (int id = dead.nextClearBit(0); id < paths.size(); id = dead.nextClearBit(id + 1)) {
+                live.add(paths.get(id));
+            }
+            return live;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // files that can contain a match in index order, or null while the index is not ready or when the query has no
+    // trigram every match must contain
+    List<Path> findCandidates(SearchQuery query) {
+        if (!ready) {
+            return null;
+        }
+        List<String> literals = requiredLiterals(query);
+        if (literals == null) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            BitSet candidates = null;
+            BitSet scratch = new BitSet();
+            for (String literal : literals) {
+                for (int i = 0; i + 3 <= literal.length(); i++) {
+                    Posting posting = postings[trigram(literal.charAt(i), literal.charAt(i + 1), literal.charAt(i + 2))];
+                    if (posting == null) {
+                        candidates = new BitSet();
+                        break;
+                    }
+                    if (candidates == null) {
+                        candidates = new BitSet();
+                        posting.addTo(candidates);
+                    }
+                    else {
+                        scratch.clear();
+                        posting.addTo(scratch);
+                        candidates.and(scratch);
+                    }
+                }
+            }
+            candidates.andNot(dead);
+            candidates.or(unindexed);
+            List<Path> files = new ArrayList<>(candidates.cardinality());
+            for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+                files.add(root.resolve(paths.get(id)));
+            }
+            return files;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // runs of chars every match contains, or null when there are none of at least three chars. Regex queries are only
+    // narrowed by literal text outside of groups, classes and optional parts, and not at all if they use alternation
+    // or the comments flag, which makes whitespace in the pattern meaningless
+    static List<String> requiredLiterals(SearchQuery query) {
+        String text = query.getText();
+        List<String> literals = new ArrayList<>();
+        if (!query.isRegex()) {
+            literals.add(text);
+        }
+        else if (COMMENTS_FLAG.matcher(text).find()) {
+            return null;
+        }
+        else {
+            StringBuilder run = new StringBuilder();
+            int depth = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '\\') {
+                    char next = i + 1 < text.length() ? text.charAt(i + 1) : '\\';
+                    i++;
+                    if (Character.isLetterOrDigit(next)) {
+                        // a class like \w, an anchor like \b, a back reference or a char given by its code
+                        i = escapeEnd(text, i);
+                        addLiteral(literals, run);
+                    }
+                    else if (depth == 0) {
+                        run.append(next);
+                    }
+                }
+                else if (c == '[') {
+                    i = classEnd(text, i);
+                    addLiteral(literals, run);
+                }
+                else if (c == '(') {
+                    depth++;
+                    addLiteral(literals, run);
+                }
+                else if (c == ')') {
+                    depth--;
+                }
+                else if (depth > 0) {
+                    continue;
+                }
+                else if (c == '|') {
+                    return null;
+                }
+                else if (c == '?' || c == '*' || c == '{') {
+                    // the char before is optional
+                    if (!run.isEmpty()) {
+                        run.setLength(run.length() - 1);
+                    }
+                    addLiteral(literals, run);
+                    if (c == '{') {
+                        i = Math.max(i, text.indexOf('}', i));
+                    }
+                }
+                else if (c == '+' || c == '.' || c == '^' || c == '$') {
+                    addLiteral(literals, run);
+                }
+                else {
+                    run.append(c);
+                }
+            }
+            addLiteral(literals, run);
+        }
+        literals.removeIf(literal -> literal.length() < 3);
+        return literals.isEmpty() ? null : literals;
+    }
+
+    private static void addLiteral(List<String> literals, StringBuilder run) {
+        literals.add(run.toString());
+        run.setLength(0);
+    }
+
+    // index of the last char of an escape whose letter is at start
+    private static int escapeEnd(String pattern, int start) {
+        char c = pattern.charAt(start);
+        int end = start;
+        if (c == 'x' || c == 'p' || c == 'P' || c == 'N') {
+            if (start + 1 < pattern.length() && pattern.charAt(start + 1) == '{') {
+                end = pattern.indexOf('}', start);
+            }
+            else {
+                end = start + (c == 'x' ? 2 : 1);
+            }
+        }
+        else if (c == 'u') {
+            end = start + 4;
+        }
+        else if (c == 'c') {
+            end = start + 1;
+        }
+        else if (c == 'k') {
+            end = pattern.indexOf('>', start);
+        }
+        else if (Character.isDigit(c)) {
+            // octal escapes and back references
+            while (end + 1 < pattern.length() && Character.isDigit(pattern.charAt(end + 1))) {
+                end++;
+            }
+        }
+        return end == -1 ? pattern.length() : Math.min(end, pattern.length() - 1);
+    }
+
+    private static int classEnd(String pattern, int start) {
+        int i = start + 1;
+        if (i < pattern.length() && pattern.charAt(i) == '^') {
+            i++;
+        }
+        // a ] right after the opening bracket is part of the class
+        if (i < pattern.length() && pattern.charAt(i) == ']') {
+            i++;
+        }
+        while (i < pattern.length() && pattern.charAt(i) != ']') {
+            i += pattern.charAt(i) == '\\' ? 2 : 1;
+        }
+        return i;
+    }
+
+    private static int trigram(char a, char b, char c) {
+        return code(a) << 14 | code(b) << 7 | code(c);
+    }
+
+    private static int code(char c) {
+        char folded = SearchQuery.fold(c);
+        return folded < 128 ? folded : (folded ^ folded >>> 7 ^ folded >>> 14) & 0x7F;
+    }
+
+    // distinct trigrams of the text, none of them spans a line break
+    private static int[] trigramsOf(String text) {
+        long[] seen = seenTrigrams.get();
+        int[] trigrams = new int[256];
+        int count = 0;
+        int lineLength = 0;
+        int previous = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r') {
+                lineLength = 0;
+                continue;
+            }
+            previous = (previous << 7 | code(c)) & (TRIGRAM_COUNT - 1);
+            lineLength++;
+            if (lineLength >= 3 && (seen[previous >>> 6] & 1L << previous) == 0) {
+                seen[previous >>> 6] |= 1L << previous;
+                if (count == trigrams.length) {
+                    trigrams = Arrays.copyOf(trigrams, count * 2);
+                }
+                trigrams[count++] = previous;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            seen[trigrams[i] >>> 6] = 0;
+        }
+        return Arrays.copyOf(trigrams, count);
+    }
+
+    // stats every file, re-indexes the new and changed ones and drops the ones that are gone
+    private void refresh() throws IOException {
+        Set<String> found = new HashSet<>();
+        List<Path> files = new ArrayList<>();
+        List<BasicFileAttributes> attributes = new ArrayList<>();
+        // folders that failed before are tried again, the system may have watches to spare by now
+        refreshWatched = true;
+        IgnoreRules.walk(root, IgnoreRules.forRoot(root), () -> closed, this::watch, (file, fileAttributes) -> {
+            String path = root.relativize(file).toString();
+            found.add(path);
+            Integer id = ids.get(path);
+            if (id == null || sizes[id] != fileAttributes.size()
+                    || modifiedTimes[id] != fileAttributes.lastModifiedTime().toMillis()) {
+                files.add(file);
+                attributes.add(fileAttributes);
+                if (files.size() == BATCH_SIZE) {
+                    indexFiles(files, attributes);
+                    files.clear();
+                    attributes.clear();
+                }
+            }
+        });
+        indexFiles(files, attributes);
+        if (closed) {
+            return;
+        }
+        watchingAll = refreshWatched;
+        for (String path : new ArrayList<>(ids.keySet())) {
+            if (!found.contains(path)) {
+                removeFile(path);
+            }
+        }
+        compactIfNeeded();
+    }
+
+    private void indexFiles(List<Path> files, List<BasicFileAttributes> attributes) {
+        List<Future<int[]>> trigrams = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            boolean large = attributes.get(i).size() > MAX_INDEXED_SIZE;
+            trigrams.add(FileSearch.workers.submit(() -> {
+                if (large) {
+                    return null;
+                }
+                try {
+                    String text = FileSearch.readText(file);
+                    // binary files are kept without trigrams so they are neither read again nor searched
+                    return text == null ? new int[0] : trigramsOf(text);
+                }
+                catch (NoSuchFileException e) {
+                    return new int[0];
+                }
+            }));
+        }
+
+        for (int i = 0; i < files.size(); i++) {
+            int[] fileTrigrams;
+            try {
+                fileTrigrams = trigrams.get(i).get();
+            }
+            catch (Exception e) {
+                // unreadable right now, a candidate for every query until it is indexed again
+                fileTrigrams = null;
+            }
+            lock.writeLock().lock();
+            try {
+                String path = root.relativize(files.get(i)).toString();
+                Integer oldId = ids.get(path);
+                if (oldId != null) {
+                    dead.set(oldId);
+                    unindexed.clear(oldId);
+                }
+                else {
+                    fileListVersion++;
+                }
+                int id = paths.size();
+                paths.add(path);
+                if (id == sizes.length) {
+                    sizes = Arrays.copyOf(sizes, id * 2);
+                    modifiedTimes = Arrays.copyOf(modifiedTimes, id * 2);
+                }
+                sizes[id] = attributes.get(i).size();
+                modifiedTimes[id] = attributes.get(i).lastModifiedTime().toMillis();
+                ids.put(path, id);
+                if (fileTrigrams == null) {
+                    unindexed.set(id);
+                }
+                else {
+                    for (int trigram : fileTrigrams) {
+                        if (postings[trigram] == null) {
+                            postings[trigram] = new Posting();
+                        }
+                        postings[trigram].add(id);
+                    }
+                }
+                changed = true;
+            }
+            finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void removeFile(String path) {
+        lock.writeLock().lock();
+        try {
+            Integer id = ids.remove(path);
+            if (id != null) {
+                fileListVersion++;
+                dead.set(id);
+                unindexed.clear(id);
+                changed = true;
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // removes path, and every file below it when it was a folder
+    private void removeFiles(Path path) {
+        String relative = root.relativize(path).toString();
+        if (ids.containsKey(relative)) {
+            removeFile(relative);
+            return;
+        }
+        String prefix = relative + path.getFileSystem().getSeparator();
+        for (String indexed : new ArrayList<>(ids.keySet())) {
+            if (indexed.startsWith(prefix)) {
+                removeFile(indexed);
+            }
+        }
+    }
+
+    // renumbers the live files once dead ids outnumber them
+    private void compactIfNeeded() {
+        int deadCount = dead.cardinality();
+        if (deadCount < 1024 || deadCount < paths.size() - deadCount) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            int[] newIds = new int[paths.size()];
+            List<String> livePaths = new ArrayList<>();
+            for (int id = 0; id < paths.size(); id++) {
+                if (dead.get(id)) {
+                    newIds[id] = -1;
+                    continue;
+                }
+                newIds[id] = livePaths.size();
+                sizes[livePaths.size()] = sizes[id];
+                modifiedTimes[livePaths.size()] = modifiedTimes[id];
+                livePaths.add(paths.get(id));
+            }
+            BitSet liveUnindexed = new BitSet();
+            for (int id = unindexed.nextSetBit(0); id >= 0; id = unindexed.nextSetBit(id + 1)) {
+                liveUnindexed.set(newIds[id]);
+            }
+            BitSet ids = new BitSet();
+            for (int trigram = 0; trigram < TRIGRAM_COUNT; trigram++) {
+                Posting posting = postings[trigram];
+                if (posting == null) {
+                    continue;
+                }
+                ids.clear();
+                posting.addTo(ids);
+                Posting compacted = new Posting();
+                for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+                    if (newIds[id] != -1) {
+                        compacted.add(newIds[id]);
+                    }
+                }
+                postings[trigram] = compacted.length == 0 ? null : compacted;
+            }
+            paths.clear();
+            paths.addAll(livePaths);
+            this.ids.clear();
+            for (int id = 0; id < paths.size(); id++) {
+                this.ids.put(paths.get(id), id);
+            }
+            dead.clear();
+            unindexed.clear();
+            unindexed.or(liveUnindexed);
+            changed = true;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void scheduleSave() {
+        if (!saveScheduled) {
+            saveScheduled = true;
+            indexer.schedule(() -> {
+                saveScheduled = false;
+                try {
+                    compactIfNeeded();
+                    save();
+                }
+                catch (IOException e) {
+                    System.out.println("Error saving index of " + root);
+                }
+            }, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private void load() throws IOException {
+        if (!Files.isRegularFile(indexFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !in.readUTF().equals(root.toString())) {
+                return;
+            }
+            int fileCount = in.readInt();
+            sizes = new long[Math.max(1024, fileCount)];
+            modifiedTimes = new long[sizes.length];
+            for (int id = 0; id < fileCount; id++) {
+                String path = in.readUTF();
+                paths.add(path);
+                sizes[id] = in.readLong();
+                modifiedTimes[id] = in.readLong();
+                byte flags = in.readByte();
+                if ((flags & 1) != 0) {
+                    dead.set(id);
+                }
+                else {
+                    ids.put(path, id);
+                }
+                if ((flags & 2) != 0) {
+                    unindexed.set(id);
+                }
+            }
+            int postingCount = in.readInt();
+            for (int i = 0; i < postingCount; i++) {
+                Posting posting = new Posting();
+                int trigram = in.readInt();
+                posting.lastId = in.readInt();
+                posting.length = in.readInt();
+                posting.bytes = new byte[posting.length];
+                in.readFully(posting.bytes);
+                postings[trigram] = posting;
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            System.out.println("Error reading index of " + root + ", rebuilding it");
+            paths.clear();
+            ids.clear();
+            dead.clear();
+            unindexed.clear();
+            postings = new Posting[TRIGRAM_COUNT];
+        }
+    }
+
+    // written next to the index and moved over it, so a crash never leaves a truncated index behind
+    private void save() throws IOException {
+        if (!changed) {
+            return;
+        }
+        Files.createDirectories(CACHE_DIRECTORY);
+        Path temp = CACHE_DIRECTORY.resolve(indexFile.getFileName() + ".tmp");
+        // queries may run while saving, only changes wait for it
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(root.toString());
+            out.writeInt(paths.size());
+            for (int id = 0; id < paths.size(); id++) {
+                out.writeUTF(paths.get(id));
+                out.writeLong(sizes[id]);
+                out.writeLong(modifiedTimes[id]);
+                out.writeByte((dead.get(id) ? 1 : 0) | (unindexed.get(id) ? 2 : 0));
+            }
+            int postingCount = 0;
+            for (Posting posting : postings) {
+                if (posting != null) {
+                    postingCount++;
+                }
+            }
+            out.writeInt(postingCount);
+            for (int trigram = 0; trigram < TRIGRAM_COUNT; trigram++) {
+                Posting posting = postings[trigram];
+                if (posting != null) {
+                    out.writeInt(trigram);
+                    out.writeInt(posting.lastId);
+                    out.writeInt(posting.length);
+                    out.write(posting.bytes, 0, posting.length);
+                }
+            }
+            changed = false;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        try {
+            Files.move(temp, indexFile, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String cacheName(Path root) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(root.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash) + ".idx";
+        }
+        catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(root.toString().hashCode()) + ".idx";
+        }
+    }
+}
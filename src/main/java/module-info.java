@@ -9,6 +9,7 @@ module com.thelitblock.texteditor {
     requires eu.hansolo.tilesfx;
     requires org.fxmisc.richtext;
     requires org.fxmisc.flowless;
+    requires org.fxmisc.undo;
 
     opens com.thelitblock.texteditor to javafx.fxml;
     exports com.thelitblock.texteditor;